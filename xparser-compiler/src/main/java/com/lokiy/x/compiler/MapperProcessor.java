@@ -0,0 +1,389 @@
+/**
+ * Copyright (C) 2014 Luki(liulongke@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lokiy.x.compiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates a reflection-free <code>XXX_Mapper</code>, which implements <code>com.lokiy.x.db.EntityBinder</code>, for
+ * each bean which uses the xparser db annotations. The bean is skipped (and handled by reflection at runtime) if it
+ * can't be accessed from its package, e.g. a private field without getter and setter.
+ *
+ * @author Luki
+ */
+public class MapperProcessor extends AbstractProcessor {
+
+	private static final String ANNOTATION_PACKAGE = "com.lokiy.x.db.annotation.";
+	private static final String[] ANNOTATIONS = {"Unique", "Encrypt", "OrderBy", "Expose", "TableVersion", "Index", "FullText"};
+	private static final String EXPOSE = ANNOTATION_PACKAGE + "Expose";
+	private static final String ENCRYPT = ANNOTATION_PACKAGE + "Encrypt";
+	private static final String SUFFIX = "_Mapper";
+
+	/** java type => EntityMapper type code */
+	private static final Map<String, String> TYPES = new HashMap<>();
+
+	static {
+		TYPES.put("java.lang.String", "TYPE_STRING");
+		TYPES.put("long", "TYPE_LONG");
+		TYPES.put("java.lang.Long", "TYPE_LONG");
+		TYPES.put("int", "TYPE_INT");
+		TYPES.put("java.lang.Integer", "TYPE_INT");
+		TYPES.put("short", "TYPE_SHORT");
+		TYPES.put("java.lang.Short", "TYPE_SHORT");
+		TYPES.put("double", "TYPE_DOUBLE");
+		TYPES.put("java.lang.Double", "TYPE_DOUBLE");
+		TYPES.put("float", "TYPE_FLOAT");
+		TYPES.put("java.lang.Float", "TYPE_FLOAT");
+		TYPES.put("boolean", "TYPE_BOOLEAN");
+		TYPES.put("java.lang.Boolean", "TYPE_BOOLEAN");
+		TYPES.put("byte[]", "TYPE_BLOB");
+		TYPES.put("java.lang.Byte[]", "TYPE_BYTE_ARRAY");
+	}
+
+	@Override
+	public Set<String> getSupportedAnnotationTypes() {
+		Set<String> types = new LinkedHashSet<>();
+		for (String name : ANNOTATIONS) {
+			types.add(ANNOTATION_PACKAGE + name);
+		}
+		return types;
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment env) {
+		Set<TypeElement> beans = new LinkedHashSet<>();
+		for (TypeElement annotation : annotations) {
+			for (Element element : env.getElementsAnnotatedWith(annotation)) {
+				Element type = element.getKind() == ElementKind.FIELD ? element.getEnclosingElement() : element;
+				if (type.getKind() == ElementKind.CLASS) {
+					beans.add((TypeElement) type);
+				}
+			}
+		}
+		for (TypeElement bean : beans) {
+			try {
+				generate(bean);
+			} catch (IOException e) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "can't generate mapper: " + e, bean);
+			}
+		}
+		return false;
+	}
+
+	private void generate(TypeElement bean) throws IOException {
+		String reason = checkBean(bean);
+		List<Property> properties = new ArrayList<>();
+		if (reason == null) {
+			reason = collectProperties(bean, properties);
+		}
+		if (reason != null) {
+			note(bean, bean.getQualifiedName() + " uses reflection: " + reason);
+			return;
+		}
+		String packageName = processingEnv.getElementUtils().getPackageOf(bean).getQualifiedName().toString();
+		String binaryName = processingEnv.getElementUtils().getBinaryName(bean).toString();
+		String simpleName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1)) + SUFFIX;
+		String beanName = bean.getQualifiedName().toString();
+
+		JavaFileObject file = processingEnv.getFiler().createSourceFile(
+				packageName.isEmpty() ? simpleName : packageName + "." + simpleName, bean);
+		Writer writer = file.openWriter();
+		try {
+			writer.write(render(packageName, simpleName, beanName, properties));
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * @return the reason why the bean can't be generated, null if it can.
+	 */
+	private String checkBean(TypeElement bean) {
+		if (bean.getModifiers().contains(Modifier.ABSTRACT)) {
+			return "it's abstract.";
+		}
+		if (!processingEnv.getTypeUtils().isAssignable(bean.asType(),
+				processingEnv.getElementUtils().getTypeElement("java.io.Serializable").asType())) {
+			return "it's not Serializable.";
+		}
+		for (Element e = bean; !(e instanceof PackageElement); e = e.getEnclosingElement()) {
+			if (e.getModifiers().contains(Modifier.PRIVATE)) {
+				return "it's private.";
+			}
+			if (e != bean || e.getEnclosingElement() instanceof PackageElement) {
+				continue;
+			}
+			if (!e.getModifiers().contains(Modifier.STATIC)) {
+				return "it's an inner class.";
+			}
+		}
+		List<ExecutableElement> constructors = ElementFilter.constructorsIn(bean.getEnclosedElements());
+		if (constructors.isEmpty()) {
+			return null;
+		}
+		for (ExecutableElement constructor : constructors) {
+			if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+				return null;
+			}
+		}
+		return "it hasn't an accessible parameterless constructor.";
+	}
+
+	private String collectProperties(TypeElement bean, List<Property> properties) {
+		List<ExecutableElement> methods = ElementFilter.methodsIn(bean.getEnclosedElements());
+		for (VariableElement field : ElementFilter.fieldsIn(bean.getEnclosedElements())) {
+			Set<Modifier> modifiers = field.getModifiers();
+			if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT) || hasAnnotation(field, EXPOSE)) {
+				continue;
+			}
+			String javaType = field.asType().toString();
+			String type = TYPES.get(javaType);
+			if (type == null) {
+				// relation column, it's always handled by reflection.
+				continue;
+			}
+			Property p = new Property();
+			p.name = field.getSimpleName().toString();
+			p.javaType = javaType;
+			p.type = type;
+			p.encrypt = hasAnnotation(field, ENCRYPT) && !"TYPE_BLOB".equals(type) && !"TYPE_BYTE_ARRAY".equals(type);
+			if (modifiers.contains(Modifier.PRIVATE)) {
+				String cap = Character.toUpperCase(p.name.charAt(0)) + p.name.substring(1);
+				String getter = findMethod(methods, field.asType(), "get" + cap, 0);
+				if (getter == null && "TYPE_BOOLEAN".equals(type)) {
+					getter = findMethod(methods, field.asType(), "is" + cap, 0);
+				}
+				String setter = findMethod(methods, field.asType(), "set" + cap, 1);
+				if (getter == null || setter == null) {
+					return "the private field " + p.name + " hasn't getter and setter.";
+				}
+				p.getter = "bean." + getter + "()";
+				p.setter = "bean." + setter + "(%s)";
+			} else {
+				p.getter = "bean." + p.name;
+				p.setter = "bean." + p.name + " = %s";
+			}
+			properties.add(p);
+		}
+		return null;
+	}
+
+	private String findMethod(List<ExecutableElement> methods, TypeMirror type, String name, int params) {
+		for (ExecutableElement method : methods) {
+			if (!method.getSimpleName().contentEquals(name) || method.getParameters().size() != params
+					|| method.getModifiers().contains(Modifier.PRIVATE) || method.getModifiers().contains(Modifier.STATIC)) {
+				continue;
+			}
+			TypeMirror t = params == 0 ? method.getReturnType() : method.getParameters().get(0).asType();
+			if (processingEnv.getTypeUtils().isSameType(t, type)) {
+				return name;
+			}
+		}
+		return null;
+	}
+
+	private static boolean hasAnnotation(Element element, String name) {
+		for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+			if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void note(Element element, String message) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, message, element);
+	}
+
+	private String render(String packageName, String simpleName, String beanName, List<Property> properties) {
+		StringBuilder sb = new StringBuilder();
+		if (!packageName.isEmpty()) {
+			sb.append("package ").append(packageName).append(";\n\n");
+		}
+		sb.append("import android.content.ContentValues;\n");
+		sb.append("import android.database.Cursor;\n");
+		sb.append("import android.database.sqlite.SQLiteStatement;\n\n");
+		sb.append("import com.lokiy.x.db.EntityBinder;\n");
+		sb.append("import com.lokiy.x.db.EntityMapper;\n\n");
+		sb.append("/**\n * Generated by ").append(MapperProcessor.class.getName()).append(". Do not modify!\n */\n");
+		sb.append("public final class ").append(simpleName).append(" implements EntityBinder<").append(beanName).append("> {\n\n");
+
+		sb.append("\tprivate static final String[] COLUMNS = {");
+		for (int i = 0; i < properties.size(); i++) {
+			sb.append(i == 0 ? "" : ", ").append('"').append(properties.get(i).name).append('"');
+		}
+		sb.append("};\n\n");
+
+		sb.append("\t@Override\n\tpublic String[] columns() {\n\t\treturn COLUMNS;\n\t}\n\n");
+		sb.append("\t@Override\n\tpublic ").append(beanName).append(" newInstance() {\n\t\treturn new ").append(beanName).append("();\n\t}\n\n");
+
+		sb.append("\t@Override\n\tpublic void bind(").append(beanName).append(" bean, ContentValues values) throws Exception {\n");
+		for (Property p : properties) {
+			if (p.encrypt) {
+				sb.append("\t\tEntityMapper.putEncrypted(values, \"").append(p.name).append("\", ").append(p.getter).append(");\n");
+			} else if ("TYPE_BYTE_ARRAY".equals(p.type)) {
+				sb.append("\t\tvalues.put(\"").append(p.name).append("\", EntityMapper.unbox(").append(p.getter).append("));\n");
+			} else {
+				sb.append("\t\tvalues.put(\"").append(p.name).append("\", ").append(p.getter).append(");\n");
+			}
+		}
+		sb.append("\t}\n\n");
+
+		sb.append("\t@Override\n\tpublic void bind(").append(beanName).append(" bean, SQLiteStatement statement, int offset) throws Exception {\n");
+		for (int i = 0; i < properties.size(); i++) {
+			renderBind(sb, properties.get(i), "offset + " + i, "v" + i);
+		}
+		sb.append("\t}\n\n");
+
+		sb.append("\t@Override\n\tpublic void read(").append(beanName).append(" bean, Cursor c, int[] indexes) throws Exception {\n");
+		sb.append("\t\tint i;\n");
+		for (int i = 0; i < properties.size(); i++) {
+			Property p = properties.get(i);
+			sb.append("\t\tif ((i = indexes[").append(i).append("]) != -1 && !c.isNull(i)) {\n");
+			sb.append("\t\t\t").append(String.format(p.setter, readExpression(p))).append(";\n");
+			sb.append("\t\t}\n");
+		}
+		sb.append("\t}\n");
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+	private static void renderBind(StringBuilder sb, Property p, String index, String var) {
+		if (p.encrypt) {
+			sb.append("\t\tEntityMapper.bindEncrypted(statement, ").append(index).append(", \"").append(p.name).append("\", ")
+					.append(p.getter).append(");\n");
+			return;
+		}
+		String method = bindMethod(p.type);
+		String value = var;
+		if ("TYPE_BOOLEAN".equals(p.type)) {
+			value = var + " ? 1 : 0";
+		} else if ("TYPE_BYTE_ARRAY".equals(p.type)) {
+			value = "EntityMapper.unbox(" + var + ")";
+		}
+		if (p.javaType.indexOf('.') < 0 && !p.javaType.endsWith("[]")) {
+			// primitive
+			sb.append("\t\tstatement.").append(method).append("(").append(index).append(", ")
+					.append(value.replace(var, p.getter)).append(");\n");
+			return;
+		}
+		sb.append("\t\t").append(p.javaType).append(" ").append(var).append(" = ").append(p.getter).append(";\n");
+		sb.append("\t\tif (").append(var).append(" == null) {\n");
+		sb.append("\t\t\tstatement.bindNull(").append(index).append(");\n");
+		sb.append("\t\t} else {\n");
+		sb.append("\t\t\tstatement.").append(method).append("(").append(index).append(", ").append(value).append(");\n");
+		sb.append("\t\t}\n");
+	}
+
+	private static String bindMethod(String type) {
+		switch (type) {
+			case "TYPE_STRING":
+				return "bindString";
+			case "TYPE_DOUBLE":
+			case "TYPE_FLOAT":
+				return "bindDouble";
+			case "TYPE_BLOB":
+			case "TYPE_BYTE_ARRAY":
+				return "bindBlob";
+			default:
+				return "bindLong";
+		}
+	}
+
+	private static String readExpression(Property p) {
+		if (p.encrypt) {
+			String boxed = boxedType(p.type);
+			return "(" + boxed + ") EntityMapper.parse(EntityMapper." + p.type + ", EntityMapper.readEncrypted(c, i, \"" + p.name + "\"))";
+		}
+		switch (p.type) {
+			case "TYPE_STRING":
+				return "c.getString(i)";
+			case "TYPE_LONG":
+				return "c.getLong(i)";
+			case "TYPE_INT":
+				return "c.getInt(i)";
+			case "TYPE_SHORT":
+				return "c.getShort(i)";
+			case "TYPE_DOUBLE":
+				return "c.getDouble(i)";
+			case "TYPE_FLOAT":
+				return "c.getFloat(i)";
+			case "TYPE_BOOLEAN":
+				return "c.getInt(i) != 0";
+			case "TYPE_BLOB":
+				return "c.getBlob(i)";
+			default:
+				return "EntityMapper.box(c.getBlob(i))";
+		}
+	}
+
+	private static String boxedType(String type) {
+		switch (type) {
+			case "TYPE_LONG":
+				return "Long";
+			case "TYPE_INT":
+				return "Integer";
+			case "TYPE_SHORT":
+				return "Short";
+			case "TYPE_DOUBLE":
+				return "Double";
+			case "TYPE_FLOAT":
+				return "Float";
+			case "TYPE_BOOLEAN":
+				return "Boolean";
+			default:
+				return "String";
+		}
+	}
+
+	private static class Property {
+		String name;
+		String javaType;
+		String type;
+		boolean encrypt;
+		String getter;
+		/** format with the value expression. */
+		String setter;
+	}
+}
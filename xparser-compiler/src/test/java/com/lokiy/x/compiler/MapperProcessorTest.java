@@ -0,0 +1,245 @@
+/**
+ * Copyright (C) 2014 Luki(liulongke@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lokiy.x.compiler;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compiles the sample beans in <code>src/test/resources/mapper</code> with {@link MapperProcessor}, against stubs of
+ * the android and xparser classes, then loads and runs the generated mappers.
+ *
+ * @author Luki
+ */
+public class MapperProcessorTest {
+
+	private static final String[] SOURCES = {
+			"android/content/ContentValues.java",
+			"android/database/Cursor.java",
+			"android/database/sqlite/SQLiteStatement.java",
+			"com/lokiy/x/db/EntityBinder.java",
+			"com/lokiy/x/db/EntityMapper.java",
+			"com/lokiy/x/db/annotation/Encrypt.java",
+			"com/lokiy/x/db/annotation/Expose.java",
+			"com/lokiy/x/db/annotation/Unique.java",
+			"demo/User.java"};
+
+	private static final String[] USER_COLUMNS = {"name", "age", "big", "vip", "flag", "d", "f", "s", "raw", "raw2",
+			"secret", "secretNum", "nick", "ok"};
+
+	private static File sourceOutput;
+	private static ClassLoader loader;
+	private static List<Diagnostic<? extends JavaFileObject>> diagnostics;
+
+	@BeforeClass
+	public static void compile() throws Exception {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		DiagnosticCollector<JavaFileObject> collector = new DiagnosticCollector<>();
+		StandardJavaFileManager fileManager = compiler.getStandardFileManager(collector, null, Charset.forName("UTF-8"));
+		sourceOutput = Files.createTempDirectory("mapper-src").toFile();
+		File classOutput = Files.createTempDirectory("mapper-classes").toFile();
+		fileManager.setLocation(StandardLocation.SOURCE_OUTPUT, Collections.singletonList(sourceOutput));
+		fileManager.setLocation(StandardLocation.CLASS_OUTPUT, Collections.singletonList(classOutput));
+
+		List<File> files = new ArrayList<>();
+		for (String name : SOURCES) {
+			files.add(new File(MapperProcessorTest.class.getClassLoader().getResource("mapper/" + name).toURI()));
+		}
+		JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, collector, null, null,
+				fileManager.getJavaFileObjectsFromFiles(files));
+		task.setProcessors(Collections.singletonList(new MapperProcessor()));
+		boolean success = task.call();
+		fileManager.close();
+		diagnostics = collector.getDiagnostics();
+		assertTrue("compile failed: " + diagnostics, success);
+
+		loader = new URLClassLoader(new URL[]{classOutput.toURI().toURL()}, MapperProcessorTest.class.getClassLoader());
+	}
+
+	@Test
+	public void generatesMapperPerBean() {
+		assertTrue(new File(sourceOutput, "demo/User_Mapper.java").isFile());
+		assertTrue(new File(sourceOutput, "demo/User$Inner_Mapper.java").isFile());
+		assertFalse(new File(sourceOutput, "demo/User$Hidden_Mapper.java").exists());
+	}
+
+	@Test
+	public void notesSkippedBean() {
+		boolean noted = false;
+		for (Diagnostic<? extends JavaFileObject> d : diagnostics) {
+			String message = d.getMessage(null);
+			noted |= d.getKind() == Diagnostic.Kind.NOTE && message.contains("User.Hidden") && message.contains("key");
+		}
+		assertTrue("no note for User.Hidden: " + diagnostics, noted);
+	}
+
+	@Test
+	public void usesAccessors() throws Exception {
+		String source = new String(Files.readAllBytes(new File(sourceOutput, "demo/User_Mapper.java").toPath()), "UTF-8");
+		assertTrue(source.contains("bean.isOk()"));
+		assertTrue(source.contains("bean.setOk("));
+		assertTrue(source.contains("bean.getNick()"));
+		assertTrue(source.contains("bean.setNick("));
+	}
+
+	@Test
+	public void columns() throws Exception {
+		assertArrayEquals(USER_COLUMNS, (String[]) call(mapper("demo.User_Mapper"), "columns"));
+		assertArrayEquals(new String[]{"key"}, (String[]) call(mapper("demo.User$Inner_Mapper"), "columns"));
+	}
+
+	@Test
+	public void bindContentValues() throws Exception {
+		Object mapper = mapper("demo.User_Mapper");
+		Object user = call(mapper, "newInstance");
+		set(user, "name", "luki");
+		set(user, "age", 18);
+		set(user, "raw2", new Byte[]{1, 2});
+		set(user, "secret", "pwd");
+		set(user, "secretNum", 42L);
+		user.getClass().getMethod("setNick", String.class).invoke(user, "lk");
+		user.getClass().getMethod("setOk", boolean.class).invoke(user, true);
+
+		Object values = loader.loadClass("android.content.ContentValues").newInstance();
+		call(mapper, "bind", user, values);
+		assertEquals("luki", get(values, "name"));
+		assertEquals(18, get(values, "age"));
+		assertNull(get(values, "big"));
+		assertArrayEquals(new byte[]{1, 2}, (byte[]) get(values, "raw2"));
+		assertEquals("enc:pwd", get(values, "secret"));
+		assertEquals("enc:42", get(values, "secretNum"));
+		assertEquals("lk", get(values, "nick"));
+		assertEquals(true, get(values, "ok"));
+		assertFalse((Boolean) call(values, "containsKey", "exposed"));
+		assertFalse((Boolean) call(values, "containsKey", "temp"));
+	}
+
+	@Test
+	public void readCursor() throws Exception {
+		Object mapper = mapper("demo.User_Mapper");
+		final Object[] row = {"luki", 18, null, 1, null, 1.5d, 2.5f, 3, null, new byte[]{1, 2}, "enc:pwd", "enc:42",
+				"lk", 1};
+		Class<?> cursorClass = loader.loadClass("android.database.Cursor");
+		Object cursor = Proxy.newProxyInstance(loader, new Class<?>[]{cursorClass}, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				Object value = row[(Integer) args[0]];
+				switch (method.getName()) {
+					case "isNull":
+						return value == null;
+					case "getString":
+						return (String) value;
+					case "getInt":
+						return ((Number) value).intValue();
+					case "getLong":
+						return ((Number) value).longValue();
+					case "getShort":
+						return ((Number) value).shortValue();
+					case "getDouble":
+						return ((Number) value).doubleValue();
+					case "getFloat":
+						return ((Number) value).floatValue();
+					default:
+						return value;
+				}
+			}
+		});
+		// the last column isn't in the cursor
+		int[] indexes = new int[USER_COLUMNS.length];
+		for (int i = 0; i < indexes.length; i++) {
+			indexes[i] = i;
+		}
+		indexes[indexes.length - 1] = -1;
+
+		Object user = call(mapper, "newInstance");
+		call(mapper, "read", user, cursor, indexes);
+		assertEquals("luki", get(user, "name"));
+		assertEquals(18, get(user, "age"));
+		assertNull(get(user, "big"));
+		assertEquals(true, get(user, "vip"));
+		assertNull(get(user, "flag"));
+		assertEquals(1.5d, get(user, "d"));
+		assertEquals(2.5f, get(user, "f"));
+		assertEquals((short) 3, get(user, "s"));
+		assertNull(get(user, "raw"));
+		assertArrayEquals(new Byte[]{1, 2}, (Byte[]) get(user, "raw2"));
+		assertEquals("pwd", get(user, "secret"));
+		assertEquals(42L, get(user, "secretNum"));
+		assertEquals("lk", user.getClass().getMethod("getNick").invoke(user));
+		assertEquals(false, user.getClass().getMethod("isOk").invoke(user));
+	}
+
+	private static Object mapper(String name) throws Exception {
+		return loader.loadClass(name).newInstance();
+	}
+
+	private static Object call(Object target, String name, Object... args) throws Exception {
+		for (Method method : target.getClass().getMethods()) {
+			if (method.getName().equals(name) && method.getParameterTypes().length == args.length && !method.isBridge()
+					&& accepts(method.getParameterTypes(), args)) {
+				return method.invoke(target, args);
+			}
+		}
+		throw new NoSuchMethodException(name + Arrays.toString(args));
+	}
+
+	private static boolean accepts(Class<?>[] types, Object[] args) {
+		for (int i = 0; i < types.length; i++) {
+			if (!types[i].isPrimitive() && args[i] != null && !types[i].isInstance(args[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static Object get(Object target, String name) throws Exception {
+		if (target.getClass().getName().equals("android.content.ContentValues")) {
+			return call(target, "get", name);
+		}
+		return target.getClass().getField(name).get(target);
+	}
+
+	private static void set(Object target, String name, Object value) throws Exception {
+		target.getClass().getField(name).set(target, value);
+	}
+}
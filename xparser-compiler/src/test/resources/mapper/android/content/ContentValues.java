@@ -0,0 +1,55 @@
+package android.content;
+
+import java.util.HashMap;
+
+/**
+ * Stub of the android class, only what the generated mappers use.
+ */
+public final class ContentValues {
+
+	private final HashMap<String, Object> values = new HashMap<String, Object>();
+
+	public void put(String key, String value) {
+		values.put(key, value);
+	}
+
+	public void put(String key, Byte value) {
+		values.put(key, value);
+	}
+
+	public void put(String key, Short value) {
+		values.put(key, value);
+	}
+
+	public void put(String key, Integer value) {
+		values.put(key, value);
+	}
+
+	public void put(String key, Long value) {
+		values.put(key, value);
+	}
+
+	public void put(String key, Float value) {
+		values.put(key, value);
+	}
+
+	public void put(String key, Double value) {
+		values.put(key, value);
+	}
+
+	public void put(String key, Boolean value) {
+		values.put(key, value);
+	}
+
+	public void put(String key, byte[] value) {
+		values.put(key, value);
+	}
+
+	public boolean containsKey(String key) {
+		return values.containsKey(key);
+	}
+
+	public Object get(String key) {
+		return values.get(key);
+	}
+}
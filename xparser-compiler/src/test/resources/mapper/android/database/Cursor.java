@@ -0,0 +1,23 @@
+package android.database;
+
+/**
+ * Stub of the android interface, only what the generated mappers use.
+ */
+public interface Cursor {
+
+	boolean isNull(int columnIndex);
+
+	String getString(int columnIndex);
+
+	int getInt(int columnIndex);
+
+	long getLong(int columnIndex);
+
+	short getShort(int columnIndex);
+
+	double getDouble(int columnIndex);
+
+	float getFloat(int columnIndex);
+
+	byte[] getBlob(int columnIndex);
+}
@@ -0,0 +1,22 @@
+package android.database.sqlite;
+
+/**
+ * Stub of the android class, only what the generated mappers use.
+ */
+public class SQLiteStatement {
+
+	public void bindNull(int index) {
+	}
+
+	public void bindString(int index, String value) {
+	}
+
+	public void bindLong(int index, long value) {
+	}
+
+	public void bindDouble(int index, double value) {
+	}
+
+	public void bindBlob(int index, byte[] value) {
+	}
+}
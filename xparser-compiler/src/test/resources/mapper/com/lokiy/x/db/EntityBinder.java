@@ -0,0 +1,23 @@
+package com.lokiy.x.db;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
+
+import java.io.Serializable;
+
+/**
+ * Same signatures as the xparser interface.
+ */
+public interface EntityBinder<T extends Serializable> {
+
+	String[] columns();
+
+	T newInstance();
+
+	void bind(T bean, ContentValues values) throws Exception;
+
+	void bind(T bean, SQLiteStatement statement, int offset) throws Exception;
+
+	void read(T bean, Cursor c, int[] indexes) throws Exception;
+}
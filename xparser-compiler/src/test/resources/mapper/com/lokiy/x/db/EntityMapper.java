@@ -0,0 +1,83 @@
+package com.lokiy.x.db;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * Same signatures as the xparser statics the generated mappers call, "encrypts" by a prefix.
+ */
+public final class EntityMapper {
+
+	public static final int TYPE_STRING = 1;
+	public static final int TYPE_LONG = 2;
+	public static final int TYPE_INT = 3;
+	public static final int TYPE_SHORT = 4;
+	public static final int TYPE_DOUBLE = 5;
+	public static final int TYPE_FLOAT = 6;
+	public static final int TYPE_BOOLEAN = 7;
+	public static final int TYPE_BLOB = 8;
+	public static final int TYPE_BYTE_ARRAY = 9;
+	public static final int TYPE_OTHER = 10;
+
+	public static final String PREFIX = "enc:";
+
+	public static Object parse(int type, String value) {
+		switch (type) {
+			case TYPE_STRING:
+				return value;
+			case TYPE_LONG:
+				return Long.valueOf(value);
+			case TYPE_INT:
+				return Integer.valueOf(value);
+			case TYPE_SHORT:
+				return Short.valueOf(value);
+			case TYPE_DOUBLE:
+				return Double.valueOf(value);
+			case TYPE_FLOAT:
+				return Float.valueOf(value);
+			case TYPE_BOOLEAN:
+				return "1".equals(value) || Boolean.valueOf(value);
+			default:
+				return null;
+		}
+	}
+
+	public static void putEncrypted(ContentValues values, String column, Object value) throws Exception {
+		values.put(column, value == null ? null : PREFIX + value);
+	}
+
+	public static void bindEncrypted(SQLiteStatement statement, int index, String column, Object value) throws Exception {
+		if (value == null) {
+			statement.bindNull(index);
+		} else {
+			statement.bindString(index, PREFIX + value);
+		}
+	}
+
+	public static String readEncrypted(Cursor c, int columnIndex, String column) throws Exception {
+		return c.getString(columnIndex).substring(PREFIX.length());
+	}
+
+	public static byte[] unbox(Byte[] value) {
+		if (value == null) {
+			return null;
+		}
+		byte[] result = new byte[value.length];
+		for (int i = 0; i < value.length; i++) {
+			result[i] = value[i];
+		}
+		return result;
+	}
+
+	public static Byte[] box(byte[] value) {
+		if (value == null) {
+			return null;
+		}
+		Byte[] result = new Byte[value.length];
+		for (int i = 0; i < value.length; i++) {
+			result[i] = value[i];
+		}
+		return result;
+	}
+}
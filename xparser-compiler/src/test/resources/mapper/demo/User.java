@@ -0,0 +1,64 @@
+package demo;
+
+import com.lokiy.x.db.annotation.Encrypt;
+import com.lokiy.x.db.annotation.Expose;
+import com.lokiy.x.db.annotation.Unique;
+
+import java.io.Serializable;
+import java.util.List;
+
+public class User implements Serializable {
+
+	public static int count;
+
+	@Unique
+	public String name;
+	public int age;
+	public Long big;
+	public boolean vip;
+	public Boolean flag;
+	public double d;
+	public Float f;
+	public short s;
+	public byte[] raw;
+	public Byte[] raw2;
+	@Encrypt
+	public String secret;
+	@Encrypt
+	public long secretNum;
+	@Expose
+	public String exposed;
+	public transient int temp;
+	public List<User> friends;
+	private String nick;
+	private boolean ok;
+
+	public String getNick() {
+		return nick;
+	}
+
+	public void setNick(String nick) {
+		this.nick = nick;
+	}
+
+	public boolean isOk() {
+		return ok;
+	}
+
+	public void setOk(boolean ok) {
+		this.ok = ok;
+	}
+
+	public static class Inner implements Serializable {
+
+		@Unique
+		public String key;
+	}
+
+	/** the private field hasn't getter and setter, so it's left to reflection. */
+	public static class Hidden implements Serializable {
+
+		@Unique
+		private String key;
+	}
+}
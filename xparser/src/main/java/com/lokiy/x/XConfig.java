@@ -19,6 +19,7 @@ package com.lokiy.x;
 import android.content.Context;
 import android.view.WindowManager;
 
+import com.lokiy.x.db.DBConfig;
 import com.lokiy.x.inject.content.IParser;
 import com.lokiy.x.inject.content.InjectParser;
 import com.lokiy.x.net.RequestHandler;
@@ -27,6 +28,10 @@ import com.lokiy.x.task.DataParser;
 import com.lokiy.x.util.NetStatusUtils;
 
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -55,6 +60,8 @@ public class XConfig {
 	int times;
 	DataParser dataParser;
 	boolean enableDefaultParserLogging;
+	DBConfig dbConfig;
+	Map<String, List<Class<?>>> entities;
 
 	/**
 	 * Builder for {@link XConfig}
@@ -75,6 +82,8 @@ public class XConfig {
 		private int times = 1;
 		private DataParser dataParser;
 		private boolean enabledDefaultParserLogging;
+		private DBConfig dbConfig;
+		private Map<String, List<Class<?>>> entities = new HashMap<>();
 
 		public Builder(Context context) {
 			this.context = context.getApplicationContext();
@@ -151,6 +160,35 @@ public class XConfig {
 			return this;
 		}
 
+		/**
+		 * Set up the config of the databases. Default is {@link DBConfig#createDefaultConfig()}.
+		 */
+		public Builder dbConfig(DBConfig dbConfig) {
+			this.dbConfig = dbConfig;
+			return this;
+		}
+
+		/**
+		 * Register the entity classes of the default database, the tables are created or migrated on a background
+		 * thread when XParser is initialized.
+		 */
+		public Builder registerEntities(Class<?>... classes) {
+			return registerEntities(null, classes);
+		}
+
+		/**
+		 * Register the entity classes of the database, the tables are created or migrated on a background thread
+		 * when XParser is initialized.
+		 */
+		public Builder registerEntities(String dbName, Class<?>... classes) {
+			List<Class<?>> list = entities.get(dbName);
+			if (list == null) {
+				entities.put(dbName, list = new ArrayList<>());
+			}
+			list.addAll(Arrays.asList(classes));
+			return this;
+		}
+
 		/** Builds configured {@link XConfig} object */
 		public XConfig build() {
 			check();
@@ -199,6 +237,8 @@ public class XConfig {
 		this.times = builder.times;
 		this.dataParser = builder.dataParser;
 		this.enableDefaultParserLogging = builder.enabledDefaultParserLogging;
+		this.dbConfig = builder.dbConfig == null ? DBConfig.createDefaultConfig() : builder.dbConfig;
+		this.entities = builder.entities;
 		
 		if (writeLogs) {
 			XLog.enableLogging();
@@ -19,6 +19,7 @@ package com.lokiy.x;
 import android.app.Activity;
 import android.view.View;
 
+import com.lokiy.x.db.AsyncDBHelper;
 import com.lokiy.x.db.DBEntryMap;
 import com.lokiy.x.db.DBHelper;
 import com.lokiy.x.inject.content.IParser;
@@ -31,6 +32,8 @@ import com.lokiy.x.task.OnTaskStatusListener;
 import com.lokiy.x.task.base.AsyncTask;
 
 import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
 
 import static com.lokiy.x.inject.view.InjectEventControl.initListener;
 import static com.lokiy.x.inject.view.InjectEventControl.initView;
@@ -74,11 +77,41 @@ public enum XParser {
 		if (this.configuration == null) {
 			XLog.d(TAG, LOG_INIT_CONFIG);
 			this.configuration = configuration;
+			registerEntities(configuration);
 		} else {
 			XLog.w(TAG, WARNING_RE_INIT_CONFIG);
 		}
 	}
 
+	/**
+	 * create or migrate the tables of the registered entities on a background thread, so the first use of them
+	 * doesn't wait for it.
+	 *
+	 * @param configuration configuration
+	 */
+	private void registerEntities(final XConfig configuration) {
+		if (configuration.entities.isEmpty()) {
+			return;
+		}
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				long l = System.currentTimeMillis();
+				for (Map.Entry<String, List<Class<?>>> entry : configuration.entities.entrySet()) {
+					try {
+						DBHelper helper = DBEntryMap.getDBHelper(XConfig.sContext, entry.getKey(), configuration.dbConfig);
+						helper.register(entry.getValue().toArray(new Class<?>[entry.getValue().size()]));
+					} catch (Exception e) {
+						XLog.w(TAG, e);
+					}
+				}
+				XLog.d(TAG, "register entities cost %d", System.currentTimeMillis() - l);
+			}
+		}, "XDB register");
+		thread.setPriority(Thread.NORM_PRIORITY - 1);
+		thread.start();
+	}
+
 	/**
 	 * Returns <b>true</b> - if XParser {@linkplain #init(XConfig) is initialized with
 	 * configuration}; <b>false</b> - otherwise
@@ -286,7 +319,19 @@ public enum XParser {
 	 */
 	public DBHelper getDBHelper(String dbName) {
 		checkConfiguration();
-		return DBEntryMap.getDBHelper(XConfig.sContext, dbName);
+		return DBEntryMap.getDBHelper(XConfig.sContext, dbName, configuration.dbConfig);
+	}
+
+	/**
+	 * returns an AsyncDBHelper of the database, which runs the DBHelper methods off the main thread.
+	 *
+	 * @param dbName dbName
+	 * @return AsyncDBHelper
+	 *
+	 * @see AsyncDBHelper
+	 */
+	public AsyncDBHelper getAsyncDBHelper(String dbName) {
+		return new AsyncDBHelper(getDBHelper(dbName));
 	}
 
 	/**
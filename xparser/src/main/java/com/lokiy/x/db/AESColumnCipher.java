@@ -0,0 +1,149 @@
+/**
+ * Copyright (C) 2014 Luki(liulongke@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lokiy.x.db;
+
+import android.os.Build;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * The default {@link ColumnCipher}. The key of each column is derived from the master key by HMAC-SHA256 once, and
+ * the ciphers are kept per thread. The value is encrypted by AES/GCM since API 19, or AES/CBC before it, with a
+ * random IV, and it's stored as <code>version + IV + cipher text</code>.
+ *
+ * @author Luki
+ */
+public class AESColumnCipher implements ColumnCipher {
+
+	private static final String DEFAULT_KEY = "lukixaes";
+	private static final byte VERSION_CBC = 1;
+	private static final byte VERSION_GCM = 2;
+	/** Build.VERSION_CODES.KITKAT, GCMParameterSpec is supported since it. */
+	private static final int GCM_SDK_INT = 19;
+	private static final int CBC_IV_LENGTH = 16;
+	private static final int GCM_IV_LENGTH = 12;
+	private static final int GCM_TAG_BITS = 128;
+
+	private static final ThreadLocal<Cipher> sCBCCipher = new ThreadLocal<>();
+	private static final ThreadLocal<Cipher> sGCMCipher = new ThreadLocal<>();
+
+	private final byte[] masterKey;
+	/** column name => derived key. */
+	private final Map<String, SecretKeySpec> keyMap = new ConcurrentHashMap<>();
+	private final SecureRandom random = new SecureRandom();
+
+	/**
+	 * @param masterKey the master key, at least 16 bytes.
+	 */
+	public AESColumnCipher(byte[] masterKey) {
+		if (masterKey == null || masterKey.length < 16) {
+			throw new IllegalArgumentException("AESColumnCipher master key must be at least 16 bytes");
+		}
+		this.masterKey = Arrays.copyOf(masterKey, masterKey.length);
+	}
+
+	/**
+	 * create the cipher with the built-in key, which only obscures the values. Use your own key with
+	 * {@link com.lokiy.x.db.DBConfig.Builder#columnCipher(ColumnCipher)} to protect them.
+	 *
+	 * @return AESColumnCipher
+	 */
+	public static AESColumnCipher createDefault() {
+		try {
+			return new AESColumnCipher(MessageDigest.getInstance("SHA-256").digest(DEFAULT_KEY.getBytes("UTF-8")));
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public byte[] encrypt(String column, byte[] data) throws Exception {
+		boolean isGCM = Build.VERSION.SDK_INT >= GCM_SDK_INT;
+		byte[] iv = new byte[isGCM ? GCM_IV_LENGTH : CBC_IV_LENGTH];
+		random.nextBytes(iv);
+		Cipher cipher;
+		if (isGCM) {
+			cipher = getCipher(sGCMCipher, "AES/GCM/NoPadding");
+			cipher.init(Cipher.ENCRYPT_MODE, getKey(column), new GCMParameterSpec(GCM_TAG_BITS, iv));
+		} else {
+			cipher = getCipher(sCBCCipher, "AES/CBC/PKCS5Padding");
+			cipher.init(Cipher.ENCRYPT_MODE, getKey(column), new IvParameterSpec(iv));
+		}
+		byte[] result = new byte[1 + iv.length + cipher.getOutputSize(data.length)];
+		result[0] = isGCM ? VERSION_GCM : VERSION_CBC;
+		System.arraycopy(iv, 0, result, 1, iv.length);
+		int length = cipher.doFinal(data, 0, data.length, result, 1 + iv.length);
+		return length == result.length - 1 - iv.length ? result : Arrays.copyOf(result, 1 + iv.length + length);
+	}
+
+	@Override
+	public byte[] decrypt(String column, byte[] data) throws Exception {
+		if (data.length < 1) {
+			throw new GeneralSecurityException("AESColumnCipher empty data of " + column);
+		}
+		Cipher cipher;
+		int offset;
+		switch (data[0]) {
+			case VERSION_GCM:
+				offset = 1 + GCM_IV_LENGTH;
+				cipher = getCipher(sGCMCipher, "AES/GCM/NoPadding");
+				cipher.init(Cipher.DECRYPT_MODE, getKey(column), new GCMParameterSpec(GCM_TAG_BITS, data, 1, GCM_IV_LENGTH));
+				break;
+			case VERSION_CBC:
+				offset = 1 + CBC_IV_LENGTH;
+				cipher = getCipher(sCBCCipher, "AES/CBC/PKCS5Padding");
+				cipher.init(Cipher.DECRYPT_MODE, getKey(column), new IvParameterSpec(data, 1, CBC_IV_LENGTH));
+				break;
+			default:
+				throw new GeneralSecurityException("AESColumnCipher unknown version " + data[0] + " of " + column);
+		}
+		return cipher.doFinal(data, offset, data.length - offset);
+	}
+
+	/**
+	 * @return the key of the column, HMAC-SHA256(master key, column).
+	 */
+	private SecretKeySpec getKey(String column) throws Exception {
+		SecretKeySpec key = keyMap.get(column);
+		if (key == null) {
+			Mac mac = Mac.getInstance("HmacSHA256");
+			mac.init(new SecretKeySpec(masterKey, "HmacSHA256"));
+			key = new SecretKeySpec(mac.doFinal(column.getBytes("UTF-8")), "AES");
+			keyMap.put(column, key);
+		}
+		return key;
+	}
+
+	private static Cipher getCipher(ThreadLocal<Cipher> local, String transformation) throws Exception {
+		Cipher cipher = local.get();
+		if (cipher == null) {
+			cipher = Cipher.getInstance(transformation);
+			local.set(cipher);
+		}
+		return cipher;
+	}
+}
@@ -0,0 +1,417 @@
+/**
+ * Copyright (C) 2014 Luki(liulongke@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lokiy.x.db;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.lokiy.x.XLog;
+import com.lokiy.x.task.OnTaskCallBack;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous facade of {@link DBHelper}. The writing runs on one serialized writer thread and the queries run on a
+ * pool of reader threads, which are shared by all the databases. Every method returns a {@link Future}, and the
+ * callback, if any, is called on the main thread. A failed task is told to {@link OnDBCallBack} only. A task
+ * submitted from a thread of the same kind runs directly without a thread handoff, so a writing task may call the
+ * writing methods and wait for them.
+ *
+ * @author Luki
+ */
+public class AsyncDBHelper {
+
+	private static final String TAG = AsyncDBHelper.class.getSimpleName();
+	private static final int READ_POOL_SIZE = 3;
+
+	private static final Executor WRITE_EXECUTOR = Executors.newSingleThreadExecutor(new DBThreadFactory("XDB write", true));
+	private static final Executor READ_EXECUTOR = Executors.newFixedThreadPool(READ_POOL_SIZE, new DBThreadFactory("XDB read #", false));
+	private static final Handler sHandler = new Handler(Looper.getMainLooper());
+
+	private final DBHelper helper;
+
+	public AsyncDBHelper(DBHelper helper) {
+		if (helper == null) {
+			throw new IllegalArgumentException("AsyncDBHelper helper can't be null");
+		}
+		this.helper = helper;
+	}
+
+	/**
+	 * @return the synchronous DBHelper.
+	 */
+	public DBHelper getDBHelper() {
+		return helper;
+	}
+
+	/**
+	 * run the task on the writer thread.
+	 *
+	 * @param task     task
+	 * @param callBack the callback on the main thread, null means none. Use {@link OnDBCallBack} to be told the failure.
+	 * @return the future of the result
+	 */
+	public <R> Future<R> write(Callable<R> task, OnTaskCallBack<R> callBack) {
+		DBFuture<R> future = new DBFuture<>(task, callBack);
+		Thread thread = Thread.currentThread();
+		if (thread instanceof DBThread && ((DBThread) thread).isWriter) {
+			future.run();
+		} else {
+			WRITE_EXECUTOR.execute(future);
+		}
+		return future;
+	}
+
+	/**
+	 * run the task on a reader thread, it runs directly on the DB threads, so a writing task reads its own writing.
+	 *
+	 * @param task     task
+	 * @param callBack the callback on the main thread, null means none. Use {@link OnDBCallBack} to be told the failure.
+	 * @return the future of the result
+	 */
+	public <R> Future<R> read(Callable<R> task, OnTaskCallBack<R> callBack) {
+		DBFuture<R> future = new DBFuture<>(task, callBack);
+		if (Thread.currentThread() instanceof DBThread) {
+			future.run();
+		} else {
+			READ_EXECUTOR.execute(future);
+		}
+		return future;
+	}
+
+	/**
+	 * create or migrate the tables on the writer thread, the rebuilding of a table may take a while.
+	 *
+	 * @see DBHelper#register(Class[])
+	 */
+	public Future<Void> register(OnTaskCallBack<Void> callBack, final Class<?>... classes) {
+		return write(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				helper.register(classes);
+				return null;
+			}
+		}, callBack);
+	}
+
+	/**
+	 * @see DBHelper#insert(Serializable)
+	 */
+	public <T extends Serializable> Future<Long> insert(final T t, OnTaskCallBack<Long> callBack) {
+		return write(new Callable<Long>() {
+			@Override
+			public Long call() throws Exception {
+				return helper.insert(t);
+			}
+		}, callBack);
+	}
+
+	/**
+	 * @see DBHelper#update(Serializable)
+	 */
+	public <T extends Serializable> Future<Integer> update(final T t, OnTaskCallBack<Integer> callBack) {
+		return write(new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				return helper.update(t);
+			}
+		}, callBack);
+	}
+
+	/**
+	 * @see DBHelper#save(Serializable)
+	 */
+	public <T extends Serializable> Future<Integer> save(final T t, OnTaskCallBack<Integer> callBack) {
+		return write(new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				return helper.save(t);
+			}
+		}, callBack);
+	}
+
+	/**
+	 * @see DBHelper#save(List)
+	 */
+	public <T extends Serializable> Future<Integer> save(final List<T> list, OnTaskCallBack<Integer> callBack) {
+		return write(new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				return helper.save(list);
+			}
+		}, callBack);
+	}
+
+	/**
+	 * @see DBHelper#importJson(Class, Reader)
+	 */
+	public <T extends Serializable> Future<Integer> importJson(final Class<T> clazz, final Reader reader, OnTaskCallBack<Integer> callBack) {
+		return write(new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				return helper.importJson(clazz, reader);
+			}
+		}, callBack);
+	}
+
+	/**
+	 * @see DBHelper#importSnapshot(Class, InputStream, ExportFormat)
+	 */
+	public <T extends Serializable> Future<Integer> importSnapshot(final Class<T> clazz, final InputStream in, final ExportFormat format,
+			OnTaskCallBack<Integer> callBack) {
+		return write(new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				return helper.importSnapshot(clazz, in, format);
+			}
+		}, callBack);
+	}
+
+	/**
+	 * @see DBHelper#export(Class, OutputStream, ExportFormat)
+	 */
+	public <T extends Serializable> Future<Long> export(final Class<T> clazz, final OutputStream out, final ExportFormat format,
+			OnTaskCallBack<Long> callBack) {
+		return read(new Callable<Long>() {
+			@Override
+			public Long call() throws Exception {
+				return helper.export(clazz, out, format);
+			}
+		}, callBack);
+	}
+
+	/**
+	 * @see DBHelper#delete(Serializable)
+	 */
+	public <T extends Serializable> Future<Integer> delete(final T t, OnTaskCallBack<Integer> callBack) {
+		return write(new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				return helper.delete(t);
+			}
+		}, callBack);
+	}
+
+	/**
+	 * @see DBHelper#delete(List)
+	 */
+	public <T extends Serializable> Future<Integer> delete(final List<T> list, OnTaskCallBack<Integer> callBack) {
+		return write(new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				return helper.delete(list);
+			}
+		}, callBack);
+	}
+
+	/**
+	 * @see DBHelper#deleteBySelection(Class, DBSelection)
+	 */
+	public <T extends Serializable> Future<Integer> deleteBySelection(final Class<T> clazz, final DBSelection<T> selection,
+			OnTaskCallBack<Integer> callBack) {
+		return write(new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				return helper.deleteBySelection(clazz, selection);
+			}
+		}, callBack);
+	}
+
+	/**
+	 * @see DBHelper#findByBean(Serializable)
+	 */
+	public <T extends Serializable> Future<T> findByBean(final T bean, OnTaskCallBack<T> callBack) {
+		return read(new Callable<T>() {
+			@Override
+			public T call() throws Exception {
+				return helper.findByBean(bean);
+			}
+		}, callBack);
+	}
+
+	/**
+	 * @see DBHelper#findBySelection(Class, DBSelection)
+	 */
+	public <T extends Serializable> Future<T> findBySelection(final Class<T> clazz, final DBSelection<T> selection,
+			OnTaskCallBack<T> callBack) {
+		return read(new Callable<T>() {
+			@Override
+			public T call() throws Exception {
+				return helper.findBySelection(clazz, selection);
+			}
+		}, callBack);
+	}
+
+	/**
+	 * @see DBHelper#selectByBean(Serializable)
+	 */
+	public <T extends Serializable> Future<List<T>> selectByBean(final T bean, OnTaskCallBack<List<T>> callBack) {
+		return read(new Callable<List<T>>() {
+			@Override
+			public List<T> call() throws Exception {
+				return helper.selectByBean(bean);
+			}
+		}, callBack);
+	}
+
+	/**
+	 * @see DBHelper#selectBySelection(Class, DBSelection)
+	 */
+	public <T extends Serializable> Future<List<T>> selectBySelection(final Class<T> clazz, final DBSelection<T> selection,
+			OnTaskCallBack<List<T>> callBack) {
+		return read(new Callable<List<T>>() {
+			@Override
+			public List<T> call() throws Exception {
+				return helper.selectBySelection(clazz, selection);
+			}
+		}, callBack);
+	}
+
+	/**
+	 * @see DBHelper#count(Class, DBSelection)
+	 */
+	public <T extends Serializable> Future<Long> count(final Class<T> clazz, final DBSelection<T> selection, OnTaskCallBack<Long> callBack) {
+		return read(new Callable<Long>() {
+			@Override
+			public Long call() throws Exception {
+				return helper.count(clazz, selection);
+			}
+		}, callBack);
+	}
+
+	/**
+	 * @see DBHelper#exists(Class, DBSelection)
+	 */
+	public <T extends Serializable> Future<Boolean> exists(final Class<T> clazz, final DBSelection<T> selection,
+			OnTaskCallBack<Boolean> callBack) {
+		return read(new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws Exception {
+				return helper.exists(clazz, selection);
+			}
+		}, callBack);
+	}
+
+	/**
+	 * @see DBHelper#search(Class, String, int)
+	 */
+	public <T extends Serializable> Future<List<T>> search(final Class<T> clazz, final String query, final int limit,
+			OnTaskCallBack<List<T>> callBack) {
+		return read(new Callable<List<T>>() {
+			@Override
+			public List<T> call() throws Exception {
+				return helper.search(clazz, query, limit);
+			}
+		}, callBack);
+	}
+
+	/**
+	 * the future which posts the result to the callback on the main thread. A failed task posts
+	 * {@link OnDBCallBack#onError(Throwable)}, and nothing to the other callbacks, so the failure isn't taken as a
+	 * null result.
+	 */
+	private static class DBFuture<R> extends FutureTask<R> {
+
+		private final OnTaskCallBack<R> callBack;
+
+		DBFuture(Callable<R> callable, OnTaskCallBack<R> callBack) {
+			super(callable);
+			this.callBack = callBack;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		protected void done() {
+			R result = null;
+			Throwable error = null;
+			boolean isCancelled = isCancelled();
+			if (!isCancelled) {
+				try {
+					result = get();
+				} catch (InterruptedException e) {
+					error = e;
+				} catch (ExecutionException e) {
+					error = e.getCause() == null ? e : e.getCause();
+				}
+			}
+			if (error != null) {
+				XLog.w(TAG, error);
+				if (!(callBack instanceof OnDBCallBack)) {
+					return;
+				}
+			}
+			if (callBack == null) {
+				return;
+			}
+			final R r = result;
+			final Throwable e = error;
+			final boolean cancelled = isCancelled;
+			sHandler.post(new Runnable() {
+				@Override
+				public void run() {
+					if (cancelled) {
+						callBack.onCancel();
+					} else if (e != null) {
+						((OnDBCallBack<R>) callBack).onError(e);
+					} else {
+						callBack.onResult(r);
+					}
+				}
+			});
+		}
+	}
+
+	private static class DBThread extends Thread {
+
+		final boolean isWriter;
+
+		DBThread(Runnable r, String name, boolean isWriter) {
+			super(r, name);
+			this.isWriter = isWriter;
+		}
+	}
+
+	private static class DBThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger mCount = new AtomicInteger(1);
+		private final String name;
+		private final boolean isWriter;
+
+		DBThreadFactory(String name, boolean isWriter) {
+			this.name = name;
+			this.isWriter = isWriter;
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new DBThread(r, isWriter ? name : name + mCount.getAndIncrement(), isWriter);
+			thread.setPriority(Thread.NORM_PRIORITY - 1);
+			return thread;
+		}
+	}
+}
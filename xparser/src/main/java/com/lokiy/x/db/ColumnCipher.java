@@ -0,0 +1,43 @@
+/**
+ * Copyright (C) 2014 Luki(liulongke@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lokiy.x.db;
+
+/**
+ * Codec of the {@link com.lokiy.x.db.annotation.Encrypt} columns, the encrypted values are stored as BLOB. It's
+ * called by all the threads, so it should be thread safe.
+ *
+ * @author Luki
+ * @see AESColumnCipher
+ * @see com.lokiy.x.db.util.DBUtils#setColumnCipher(ColumnCipher)
+ */
+public interface ColumnCipher {
+
+	/**
+	 * @param column column name, which the key may be derived from
+	 * @param data   plain bytes
+	 * @return encrypted bytes
+	 * @throws Exception
+	 */
+	byte[] encrypt(String column, byte[] data) throws Exception;
+
+	/**
+	 * @param column column name, which the key may be derived from
+	 * @param data   encrypted bytes
+	 * @return plain bytes
+	 * @throws Exception
+	 */
+	byte[] decrypt(String column, byte[] data) throws Exception;
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2014 Luki(liulongke@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lokiy.x.db;
+
+import android.database.Cursor;
+
+import com.lokiy.x.XLog;
+
+import java.io.Closeable;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lazy list which is backed by an open {@link Cursor}. The beans are created when they are accessed, a window of
+ * {@link #windowSize} rows at a time, and the last few windows are cached. It must be closed after using.
+ *
+ * @author Luki
+ * @param <T>
+ */
+public class CursorList<T extends Serializable> extends AbstractList<T> implements Closeable {
+
+	private static final String TAG = "CursorList";
+	public static final int DEFAULT_WINDOW_SIZE = 50;
+	private static final int MAX_WINDOW_COUNT = 3;
+
+	private Cursor cursor;
+	private final Loader<T> loader;
+	private final int count;
+	private final int windowSize;
+	/** window start position => beans, in access order. */
+	private final Map<Integer, List<T>> windows = new LinkedHashMap<Integer, List<T>>(MAX_WINDOW_COUNT + 1, 0.75f, true) {
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, List<T>> eldest) {
+			return size() > MAX_WINDOW_COUNT;
+		}
+	};
+
+	/**
+	 * @param cursor     the cursor, can be null.
+	 * @param loader     creates the beans of the rows.
+	 * @param windowSize the count of the rows created together.
+	 */
+	public CursorList(Cursor cursor, Loader<T> loader, int windowSize) {
+		this.cursor = cursor;
+		this.loader = loader;
+		this.count = cursor == null ? 0 : cursor.getCount();
+		this.windowSize = Math.max(1, windowSize);
+	}
+
+	@Override
+	public synchronized T get(int location) {
+		if (location < 0 || location >= count) {
+			throw new IndexOutOfBoundsException("Invalid index " + location + ", size is " + count);
+		}
+		int start = location - location % windowSize;
+		List<T> window = windows.get(start);
+		if (window == null) {
+			if (cursor == null || cursor.isClosed()) {
+				throw new IllegalStateException("the CursorList has been closed.");
+			}
+			long l = System.currentTimeMillis();
+			try {
+				window = loader.load(cursor, start, Math.min(windowSize, count - start));
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+			windows.put(start, window);
+			XLog.v(TAG, "load window [%d, %d) of %d, cost %d", start, start + window.size(), count, System.currentTimeMillis() - l);
+		}
+		int index = location - start;
+		return index < window.size() ? window.get(index) : null;
+	}
+
+	@Override
+	public int size() {
+		return count;
+	}
+
+	public synchronized boolean isClosed() {
+		return cursor == null || cursor.isClosed();
+	}
+
+	@Override
+	public synchronized void close() {
+		if (cursor != null) {
+			cursor.close();
+			cursor = null;
+		}
+		windows.clear();
+	}
+
+	/**
+	 * creates the beans of the rows.
+	 *
+	 * @param <T>
+	 */
+	public interface Loader<T extends Serializable> {
+
+		/**
+		 * @param c        cursor
+		 * @param position the position of the first row
+		 * @param count    the count of the rows
+		 * @return the beans
+		 * @throws Exception
+		 */
+		List<T> load(Cursor c, int position, int count) throws Exception;
+	}
+}
@@ -0,0 +1,147 @@
+/**
+ * Copyright (C) 2014 Luki(liulongke@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lokiy.x.db;
+
+/**
+ * Presents configuration of the databases opened by {@link DBEntryMap}.
+ *
+ * @author Luki
+ */
+public class DBConfig {
+
+	/**
+	 * enable the write-ahead logging, so the queries run in parallel with the writing on the read connections of
+	 * the framework's connection pool, and the writing is serialized on the primary connection. It needs API 11.
+	 */
+	public final boolean writeAheadLogging;
+	/** the max count of the beans in the identity map, 0 disables it. */
+	public final int identityMapSize;
+	/** the max count of the query results in the result cache, 0 disables it. */
+	public final int resultCacheCount;
+	/** the max estimated bytes of the query results in the result cache, 0 means no limit. */
+	public final long resultCacheBytes;
+	/** the max count of the pending beans of {@link DBHelper#saveLater(java.io.Serializable)}, 0 disables it. */
+	public final int writeBehindCount;
+	/** the delay in milliseconds from the first pending bean to the flushing. */
+	public final long writeBehindInterval;
+	/** the rows copied in each transaction when a table is rebuilt, 0 means the default. */
+	public final int migrationChunkSize;
+	/** the listener of the rebuilding of the tables. */
+	public final MigrationListener migrationListener;
+	/** the codec of the encrypted columns, which is shared by all the databases. null means the default. */
+	public final ColumnCipher columnCipher;
+
+	/**
+	 * Builder for {@link DBConfig}
+	 *
+	 * @author Luki
+	 */
+	public static class Builder {
+
+		private boolean writeAheadLogging;
+		private int identityMapSize;
+		private int resultCacheCount;
+		private long resultCacheBytes;
+		private int writeBehindCount;
+		private long writeBehindInterval;
+		private int migrationChunkSize;
+		private MigrationListener migrationListener;
+		private ColumnCipher columnCipher;
+
+		/**
+		 * Enables the write-ahead logging. Default is disabled.
+		 */
+		public Builder writeAheadLogging(boolean enabled) {
+			this.writeAheadLogging = enabled;
+			return this;
+		}
+
+		/**
+		 * Set up the max count of the beans in the identity map. Default is 0, disabled.
+		 */
+		public Builder identityMapSize(int size) {
+			this.identityMapSize = size;
+			return this;
+		}
+
+		/**
+		 * Set up the max count and the max estimated bytes of the query results. Default is 0, disabled.
+		 */
+		public Builder resultCacheSize(int maxCount, long maxBytes) {
+			this.resultCacheCount = maxCount;
+			this.resultCacheBytes = maxBytes;
+			return this;
+		}
+
+		/**
+		 * Enables the write-behind buffer, which is flushed in one transaction every interval or when the count of
+		 * the pending beans reaches the max count. Default is 0, disabled.
+		 */
+		public Builder writeBehind(long flushInterval, int maxCount) {
+			this.writeBehindInterval = flushInterval;
+			this.writeBehindCount = maxCount;
+			return this;
+		}
+
+		/**
+		 * Set up the rows copied in each transaction when a table is rebuilt, and the listener of the progress.
+		 * Default is 5000 rows and no listener.
+		 */
+		public Builder migration(int chunkSize, MigrationListener listener) {
+			this.migrationChunkSize = chunkSize;
+			this.migrationListener = listener;
+			return this;
+		}
+
+		/**
+		 * Set up the codec of the {@link com.lokiy.x.db.annotation.Encrypt} columns, e.g. {@link AESColumnCipher} with
+		 * your own key. It's shared by all the databases. Default is {@link AESColumnCipher#createDefault()}.
+		 */
+		public Builder columnCipher(ColumnCipher cipher) {
+			this.columnCipher = cipher;
+			return this;
+		}
+
+		/** Builds configured {@link DBConfig} object */
+		public DBConfig build() {
+			if (identityMapSize < 0 || resultCacheCount < 0 || resultCacheBytes < 0 || writeBehindCount < 0 || writeBehindInterval < 0 || migrationChunkSize < 0) {
+				throw new IllegalArgumentException("DBConfig size can't be negative");
+			}
+			return new DBConfig(this);
+		}
+	}
+
+	/**
+	 * create default config, rollback journal and no caches.
+	 *
+	 * @return DBConfig
+	 */
+	public static DBConfig createDefaultConfig() {
+		return new Builder().build();
+	}
+
+	private DBConfig(Builder builder) {
+		this.writeAheadLogging = builder.writeAheadLogging;
+		this.identityMapSize = builder.identityMapSize;
+		this.resultCacheCount = builder.resultCacheCount;
+		this.resultCacheBytes = builder.resultCacheBytes;
+		this.writeBehindCount = builder.writeBehindCount;
+		this.writeBehindInterval = builder.writeBehindInterval;
+		this.migrationChunkSize = builder.migrationChunkSize;
+		this.migrationListener = builder.migrationListener;
+		this.columnCipher = builder.columnCipher;
+	}
+}
@@ -18,9 +18,8 @@ package com.lokiy.x.db;
 import android.content.Context;
 import android.text.TextUtils;
 
-import java.util.HashMap;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Database entry map.
@@ -29,7 +28,7 @@ import java.util.Set;
  */
 public class DBEntryMap {
 
-	private static Map<String, DBHelper> helperMap = new HashMap<>();
+	private static Map<String, DBHelper> helperMap = new ConcurrentHashMap<>();
 	private static final String DEFAULT_DATABASE_NAME = "xdb";
 
 	/**
@@ -40,14 +39,26 @@ public class DBEntryMap {
 	 * @return DBHelper
 	 */
 	public static DBHelper getDBHelper(Context context, String dbName) {
+		return getDBHelper(context, dbName, null);
+	}
+
+	/**
+	 * create a DBHelper, the config is only used when the DBHelper is created.
+	 *
+	 * @param context context
+	 * @param dbName dbName
+	 * @param config config, null means {@link DBConfig#createDefaultConfig()}
+	 * @return DBHelper
+	 */
+	public static DBHelper getDBHelper(Context context, String dbName, DBConfig config) {
 		if (TextUtils.isEmpty(dbName) || TextUtils.isEmpty(dbName.trim())) {
 			dbName = DEFAULT_DATABASE_NAME;
 		}
 		DBHelper dbHelper;
 		if ((dbHelper = helperMap.get(dbName)) == null) {
 			synchronized (DBEntryMap.class) {
-				if (helperMap.get(dbName) == null) {
-					dbHelper = new XDBHelper(dbName, context);
+				if ((dbHelper = helperMap.get(dbName)) == null) {
+					dbHelper = new XDBHelper(dbName, context, config == null ? DBConfig.createDefaultConfig() : config);
 					helperMap.put(dbName, dbHelper);
 				}
 			}
@@ -19,8 +19,12 @@ package com.lokiy.x.db;
 import com.lokiy.x.db.DBSelection;
 
 import java.io.Closeable;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.io.Serializable;
 import java.util.List;
+import java.util.Map;
 
 /**
  * DBHelper who can convenient and unified to manage the data.<BR>
@@ -32,6 +36,9 @@ import java.util.List;
  * {@link #deleteBySelection(Class, DBSelection)}<BR>
  * {@link #findByBean(Serializable)}<BR>
  * {@link #findBySelection(Class, DBSelection)}<BR>
+ * {@link #query(Class, DBSelection)}<BR>
+ * {@link #from(Class)}<BR>
+ * {@link #count(Class, DBSelection)}<BR>
  * {@link #isOpen()}<BR>
  *
  * @author Luki
@@ -72,6 +79,54 @@ public interface DBHelper extends Closeable {
 	 */
 	<T extends Serializable> int save(List<T> list);
 
+	/**
+	 * save the JSON array of the beans from the reader without building the beans. The values are streamed into a
+	 * compiled statement and committed in batches, so the memory doesn't grow with the JSON. The rows with the existing
+	 * unique key are updated.
+	 *
+	 * @param clazz  class
+	 * @param reader JSON array or object, the names are the field names or the Gson SerializedName.
+	 * @return the number of rows saved
+	 */
+	<T extends Serializable> int importJson(Class<T> clazz, Reader reader);
+
+	/**
+	 * write the rows of the table to the stream in pages, so the memory doesn't grow with the table. The stream isn't
+	 * closed. The class can't have relation fields.
+	 *
+	 * @param clazz  class
+	 * @param out    target
+	 * @param format {@link ExportFormat#JSON_LINES} for the servers, {@link ExportFormat#BINARY} for the backups
+	 * @return the number of rows written, or -1 if an error occurred
+	 */
+	<T extends Serializable> long export(Class<T> clazz, OutputStream out, ExportFormat format);
+
+	/**
+	 * restore the rows written by {@link #export(Class, OutputStream, ExportFormat)} in batches of transactions. The
+	 * row with the same primary key is updated, and the others are inserted with their primary keys. The class can't
+	 * have relation fields.
+	 *
+	 * @param clazz  class
+	 * @param in     source, it isn't closed
+	 * @param format the format of the export
+	 * @return the number of rows restored, or -1 if an error occurred
+	 */
+	<T extends Serializable> int importSnapshot(Class<T> clazz, InputStream in, ExportFormat format);
+
+	/**
+	 * save the bean later with the write-behind buffer of {@link DBConfig#writeBehindCount}, or save it now if the
+	 * buffer is disabled. The pending beans with the same unique key are coalesced to the latest one, and they are
+	 * saved before any other operation of this DBHelper.
+	 *
+	 * @param bean updating or inserting data
+	 */
+	<T extends Serializable> void saveLater(T bean);
+
+	/**
+	 * save the pending beans of {@link #saveLater(Serializable)} now, e.g. before the process exits.
+	 */
+	void flush();
+
 	/**
 	 * Convenience method for deleting rows in the database.
 	 *
@@ -135,6 +190,131 @@ public interface DBHelper extends Closeable {
 	 */
 	<T extends Serializable> List<T> selectBySelection(Class<T> clazz, DBSelection<T> selection);
 
+	/**
+	 * query the data with selection lazily. The beans are created when they are accessed, so it fits the large
+	 * results.
+	 *
+	 * @param clazz     table and bean.
+	 * @param selection A filter declaring which rows to return, formatted as an SQL WHERE clause (excluding the WHERE
+	 *                  itself). Passing null will return all rows for the given table.
+	 * @return the lazy list backed by the cursor, it must be closed after using.
+	 */
+	<T extends Serializable> CursorList<T> query(Class<T> clazz, DBSelection<T> selection);
+
+	/**
+	 * start a fluent query of the table, see {@link Query}.
+	 *
+	 * @param clazz table
+	 * @return Query
+	 */
+	<T extends Serializable> Query<T> from(Class<T> clazz);
+
+	/**
+	 * count the rows in SQLite, without creating the beans.
+	 *
+	 * @param clazz     table
+	 * @param selection filter, null means all rows.
+	 * @return the count
+	 */
+	<T extends Serializable> long count(Class<T> clazz, DBSelection<T> selection);
+
+	/**
+	 * @param clazz     table
+	 * @param selection filter, null means all rows.
+	 * @return whether any row matches.
+	 */
+	<T extends Serializable> boolean exists(Class<T> clazz, DBSelection<T> selection);
+
+	/**
+	 * search the {@link com.lokiy.x.db.annotation.FullText} columns by the prefixes of the words. A broad query ranks
+	 * a bounded number of the matched rows only, so it's for a small page, e.g. typeahead.
+	 *
+	 * @param clazz table
+	 * @param query the words split by the white spaces
+	 * @param limit the max count of the result
+	 * @return the beans ranked by the relevance
+	 */
+	<T extends Serializable> List<T> search(Class<T> clazz, String query, int limit);
+
+	/**
+	 * @param clazz     table
+	 * @param column    field name
+	 * @param selection filter, null means all rows.
+	 * @return the sum of the column, a Long for the integers or a Double, 0 if there isn't any row.
+	 */
+	<T extends Serializable> Number sum(Class<T> clazz, String column, DBSelection<T> selection);
+
+	/**
+	 * @param clazz     table
+	 * @param column    field name
+	 * @param selection filter, null means all rows.
+	 * @return the min value of the column, a Long for the integers or a Double, 0 if there isn't any row.
+	 */
+	<T extends Serializable> Number min(Class<T> clazz, String column, DBSelection<T> selection);
+
+	/**
+	 * @param clazz     table
+	 * @param column    field name
+	 * @param selection filter, null means all rows.
+	 * @return the max value of the column, a Long for the integers or a Double, 0 if there isn't any row.
+	 */
+	<T extends Serializable> Number max(Class<T> clazz, String column, DBSelection<T> selection);
+
+	/**
+	 * count the rows of each value of the column.
+	 *
+	 * @param clazz     table
+	 * @param column    field name
+	 * @param selection filter, null means all rows. The orderBy sorts the groups, it's the column if it's null.
+	 * @return value => count
+	 */
+	<T extends Serializable> Map<String, Long> groupBy(Class<T> clazz, String column, DBSelection<T> selection);
+
+	/**
+	 * enable the identity map, which caches the beans by the table and the primary key (or the unique key of
+	 * {@link #findByBean(Serializable)}), so the point lookups and the relation rows are read from memory. The
+	 * cached beans of a table are dropped when it's written by this DBHelper.
+	 *
+	 * @param maxSize the max count of the beans, 0 disables it.
+	 */
+	void setIdentityMapSize(int maxSize);
+
+	/**
+	 * @return the identity map with the hit and miss counters, null if it's disabled.
+	 */
+	IdentityMap getIdentityMap();
+
+	/**
+	 * enable the cache of the results of {@link #selectBySelection(Class, DBSelection)} and
+	 * {@link #findBySelection(Class, DBSelection)}, keyed by the table and the query. The results of a table are
+	 * dropped when it's written by this DBHelper.
+	 *
+	 * @param maxCount the max count of the results, 0 disables it.
+	 * @param maxBytes the max estimated bytes of the results, 0 means no limit.
+	 */
+	void setResultCacheSize(int maxCount, long maxBytes);
+
+	/**
+	 * @return the result cache with the hit and miss counters, null if it's disabled.
+	 */
+	ResultCache getResultCache();
+
+	/**
+	 * create or migrate the tables of the classes now, rather than on the first use of them.
+	 *
+	 * @param classes the Serializable classes
+	 */
+	void register(Class<?>... classes);
+
+	/**
+	 * plan the migration of the table without changing it, e.g. to show the progress of the rebuilding when
+	 * {@link MigrationPlan#isRebuild} is true. The migration runs when the class is registered or used.
+	 *
+	 * @param clazz class
+	 * @return the plan, which is empty if the table doesn't exist or matches the class.
+	 */
+	<T extends Serializable> MigrationPlan planMigration(Class<T> clazz);
+
 	/**
 	 * close the DB
 	 */
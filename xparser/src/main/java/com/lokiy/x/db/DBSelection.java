@@ -15,6 +15,8 @@
  */
 package com.lokiy.x.db;
 
+import android.text.TextUtils;
+
 import java.io.Serializable;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
@@ -32,6 +34,162 @@ public class DBSelection<T extends Serializable> {
 	private List<Field> uniqueSelections = new ArrayList<Field>();
 	public String[] selectionArgs;
 	public String orderBy;
+	/** the fields to select, null means all. */
+	public String[] columns;
+	/** the max count of the rows, 0 means no limit. */
+	public int limit;
+	/** the count of the rows skipped. */
+	public int offset;
+	/** the keyset column, see {@link #after(String, Object)}. */
+	public String keyColumn;
+	public String keyValue;
+	/** the operator of the keyset column, ">" or "<". */
+	public String keyOperator;
+	/** the unique column which breaks the ties of the keyset column, null if the keyset column is unique. */
+	public String tieColumn;
+	public String tieValue;
+
+	/**
+	 * select the fields only, the others are left as the default values. The relation fields are loaded only if they
+	 * are named.
+	 *
+	 * @param columns the field names
+	 * @return this
+	 */
+	public DBSelection<T> columns(String... columns) {
+		this.columns = columns;
+		return this;
+	}
+
+	/**
+	 * @param limit the max count of the rows, 0 means no limit.
+	 * @return this
+	 */
+	public DBSelection<T> limit(int limit) {
+		this.limit = limit;
+		return this;
+	}
+
+	/**
+	 * @param offset the count of the rows skipped.
+	 * @return this
+	 */
+	public DBSelection<T> offset(int offset) {
+		this.offset = offset;
+		return this;
+	}
+
+	/**
+	 * keyset pagination, select the rows whose column is greater than the value, which is the key of the last row of
+	 * the previous page. The column should be unique (e.g. _id), and the orderBy is replaced by it ascending, so the
+	 * pages neither skip nor repeat rows. It should be called after the orderBy is set.
+	 *
+	 * @param column column name
+	 * @param value  the key of the last row
+	 * @return this
+	 */
+	public DBSelection<T> after(String column, Object value) {
+		return key(column, value, null, null, ">", " ASC");
+	}
+
+	/**
+	 * keyset pagination by a sort column which isn't unique, e.g. a name or a time. The rows are sorted by the column
+	 * and then the unique column ascending, and the rows after the last row of the previous page are selected by
+	 * <code>(column > ? OR (column = ? AND uniqueColumn > ?))</code>. The NULL values of the column aren't selected.
+	 *
+	 * @param column       the sort column
+	 * @param value        the sort value of the last row
+	 * @param uniqueColumn the unique column which breaks the ties, e.g. a {@link com.lokiy.x.db.annotation.Unique}
+	 *                     field or _id
+	 * @param uniqueValue  the unique value of the last row
+	 * @return this
+	 */
+	public DBSelection<T> after(String column, Object value, String uniqueColumn, Object uniqueValue) {
+		return key(column, value, uniqueColumn, uniqueValue, ">", " ASC");
+	}
+
+	/**
+	 * keyset pagination, select the rows whose column is less than the value, and the orderBy is replaced by it
+	 * descending.
+	 *
+	 * @see #after(String, Object)
+	 */
+	public DBSelection<T> before(String column, Object value) {
+		return key(column, value, null, null, "<", " DESC");
+	}
+
+	/**
+	 * keyset pagination by a sort column which isn't unique, descending.
+	 *
+	 * @see #after(String, Object, String, Object)
+	 */
+	public DBSelection<T> before(String column, Object value, String uniqueColumn, Object uniqueValue) {
+		return key(column, value, uniqueColumn, uniqueValue, "<", " DESC");
+	}
+
+	private DBSelection<T> key(String column, Object value, String uniqueColumn, Object uniqueValue, String operator, String sortAs) {
+		this.keyColumn = column;
+		this.keyValue = toArg(value);
+		this.keyOperator = operator;
+		this.tieColumn = uniqueColumn;
+		this.tieValue = uniqueColumn == null ? null : toArg(uniqueValue);
+		// the default @OrderBy is filled in already, but the rows are paged by the key only.
+		this.orderBy = "`" + column + "`" + sortAs + (uniqueColumn == null ? "" : ",`" + uniqueColumn + "`" + sortAs);
+		return this;
+	}
+
+	private static String toArg(Object value) {
+		return value instanceof Boolean ? ((Boolean) value ? "1" : "0") : String.valueOf(value);
+	}
+
+	/**
+	 * @return the selection with the keyset condition.
+	 */
+	public String getWhere() {
+		if (TextUtils.isEmpty(keyColumn)) {
+			return selection;
+		}
+		String key = "`" + keyColumn + "`" + keyOperator + "?";
+		if (!TextUtils.isEmpty(tieColumn)) {
+			key = "(" + key + " OR (`" + keyColumn + "`=? AND `" + tieColumn + "`" + keyOperator + "?))";
+		}
+		return TextUtils.isEmpty(selection) ? key : "(" + selection + ") AND " + key;
+	}
+
+	/**
+	 * @return the selectionArgs with the keyset value.
+	 */
+	public String[] getWhereArgs() {
+		if (TextUtils.isEmpty(keyColumn)) {
+			return selectionArgs;
+		}
+		String[] keyArgs = TextUtils.isEmpty(tieColumn) ? new String[]{keyValue} : new String[]{keyValue, keyValue, tieValue};
+		String[] args = new String[(selectionArgs == null ? 0 : selectionArgs.length) + keyArgs.length];
+		if (selectionArgs != null) {
+			System.arraycopy(selectionArgs, 0, args, 0, selectionArgs.length);
+		}
+		System.arraycopy(keyArgs, 0, args, args.length - keyArgs.length, keyArgs.length);
+		return args;
+	}
+
+	/**
+	 * @return the limit clause of the query, null if there isn't.
+	 */
+	public String getLimit() {
+		return getLimit(limit, offset);
+	}
+
+	/**
+	 * @param limit  the max count of the rows, 0 means no limit.
+	 * @param offset the count of the rows skipped.
+	 * @return the limit clause of the query, null if there isn't.
+	 */
+	public static String getLimit(int limit, int offset) {
+		if (limit <= 0 && offset <= 0) {
+			return null;
+		}
+		return (limit > 0 ? String.valueOf(limit) : "-1") + (offset > 0 ? " OFFSET " + offset : "");
+	}
 
 	public DBSelection<T> fillIn(T t) {
 		selectionArgs = new String[uniqueSelections.size()];
@@ -51,6 +209,7 @@ public class DBSelection<T extends Serializable> {
 
 	@Override
 	public String toString() {
-		return "DBSelection [selection=" + selection + ", selectionArgs=" + Arrays.toString(selectionArgs) + "]";
+		return "DBSelection [selection=" + selection + ", selectionArgs=" + Arrays.toString(selectionArgs) + ", limit=" + limit + ", offset=" + offset
+				+ ", keyColumn=" + keyColumn + ", tieColumn=" + tieColumn + "]";
 	}
 }
\ No newline at end of file
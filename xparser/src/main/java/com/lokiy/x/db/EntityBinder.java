@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2014 Luki(liulongke@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lokiy.x.db;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
+
+import java.io.Serializable;
+
+/**
+ * Reflection-free binder of a bean, which is generated as <code>XXX_Mapper</code> by the xparser-compiler. When it's
+ * on the classpath {@link EntityMapper} uses it instead of reflection. The relation columns are always handled by
+ * reflection.
+ *
+ * @author Luki
+ * @param <T>
+ */
+public interface EntityBinder<T extends Serializable> {
+
+	/**
+	 * @return the value column names, all the other methods use this order.
+	 */
+	String[] columns();
+
+	/**
+	 * @return a new instance of the bean.
+	 */
+	T newInstance();
+
+	/**
+	 * put the value columns of the bean to the ContentValues.
+	 *
+	 * @param bean   bean
+	 * @param values target
+	 * @throws Exception
+	 */
+	void bind(T bean, ContentValues values) throws Exception;
+
+	/**
+	 * bind the value columns of the bean to the statement.
+	 *
+	 * @param bean      bean
+	 * @param statement target
+	 * @param offset    the bind index of the first column
+	 * @throws Exception
+	 */
+	void bind(T bean, SQLiteStatement statement, int offset) throws Exception;
+
+	/**
+	 * set the value columns of the current row to the bean.
+	 *
+	 * @param bean    bean
+	 * @param c       cursor
+	 * @param indexes the column indexes in the order of {@link #columns()}, -1 if the cursor doesn't contain it.
+	 * @throws Exception
+	 */
+	void read(T bean, Cursor c, int[] indexes) throws Exception;
+}
@@ -0,0 +1,781 @@
+/**
+ * Copyright (C) 2014 Luki(liulongke@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lokiy.x.db;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+import android.text.TextUtils;
+
+import com.lokiy.x.XLog;
+import com.lokiy.x.db.annotation.Encrypt;
+import com.lokiy.x.db.annotation.Expose;
+import com.lokiy.x.db.annotation.FullText;
+import com.lokiy.x.db.annotation.Index;
+import com.lokiy.x.db.annotation.NotNull;
+import com.lokiy.x.db.annotation.OrderBy;
+import com.lokiy.x.db.annotation.OrderBy.SortAs;
+import com.lokiy.x.db.annotation.Rename;
+import com.lokiy.x.db.annotation.Unique;
+import com.lokiy.x.db.util.DBUtils;
+import com.lokiy.x.util.DESUtil;
+import com.lokiy.x.util.ReflectUtils;
+
+import java.io.Serializable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiled mapping metadata of a bean class. The fields, column names, type codes, annotations and the parameterless
+ * constructor are resolved once per class, so reading and writing rows doesn't reflect on the class again.<BR>
+ * If the xparser-compiler generated a <code>XXX_Mapper</code> for the class, the value columns are read and written by
+ * that {@link EntityBinder} instead of reflection.
+ *
+ * @author Luki
+ * @param <T>
+ */
+public class EntityMapper<T extends Serializable> {
+
+	public static final int TYPE_STRING = 1;
+	public static final int TYPE_LONG = 2;
+	public static final int TYPE_INT = 3;
+	public static final int TYPE_SHORT = 4;
+	public static final int TYPE_DOUBLE = 5;
+	public static final int TYPE_FLOAT = 6;
+	public static final int TYPE_BOOLEAN = 7;
+	public static final int TYPE_BLOB = 8;
+	public static final int TYPE_BYTE_ARRAY = 9;
+	/** the relation column, which is a bean or a list of beans. */
+	public static final int TYPE_OTHER = 10;
+
+	public static final String AFFINITY_TEXT = "TEXT";
+	public static final String AFFINITY_INTEGER = "INTEGER";
+	public static final String AFFINITY_REAL = "REAL";
+	public static final String AFFINITY_BLOB = "BLOB";
+	private static final String CHARSET = "UTF-8";
+
+	/** the prefix of the index names, the indexes start with it are created and dropped by xparser. */
+	public static final String INDEX_PREFIX = "x_index_";
+	public static final String UNIQUE_INDEX_PREFIX = "x_uindex_";
+
+	private static final String TAG = "EntityMapper";
+	private static final String BINDER_SUFFIX = "_Mapper";
+	private static final Map<Class<?>, EntityMapper<?>> mapperMap = new ConcurrentHashMap<>();
+
+	public final Class<T> tableClass;
+	/** all the columns, in declared order. */
+	public final Column[] columns;
+	/** the columns whose type is normal generic type. */
+	public final Column[] valueColumns;
+	/** the relation columns. */
+	public final Column[] otherColumns;
+	public final Column[] uniqueColumns;
+	/** the order by clause from {@link OrderBy}, null if there isn't. */
+	public final String orderBy;
+	/** the indexes from {@link Unique} and {@link Index}. */
+	public final TableIndex[] indexes;
+	/** the unique index of the {@link Unique} columns, null if there isn't. */
+	public final TableIndex uniqueIndex;
+	/** the columns of the {@link FullText} table. */
+	public final Column[] fullTextColumns;
+	private final Constructor<T> constructor;
+	private final EntityBinder<T> binder;
+
+	/**
+	 * get the mapper of the class. It's created at the first time.
+	 *
+	 * @param clazz class
+	 * @return EntityMapper
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T extends Serializable> EntityMapper<T> of(Class<T> clazz) {
+		EntityMapper<T> mapper = (EntityMapper<T>) mapperMap.get(clazz);
+		if (mapper == null) {
+			mapper = new EntityMapper<>(clazz);
+			mapperMap.put(clazz, mapper);
+		}
+		return mapper;
+	}
+
+	private EntityMapper(Class<T> clazz) {
+		this.tableClass = clazz;
+		List<Column> all = new ArrayList<>();
+		List<Column> values = new ArrayList<>();
+		List<Column> others = new ArrayList<>();
+		List<Column> uniques = new ArrayList<>();
+		List<Column> orders = new ArrayList<>();
+		List<Column> fullTexts = new ArrayList<>();
+		boolean isSort = false;
+		for (Field f : clazz.getDeclaredFields()) {
+			if (!isNotExcept(f)) {
+				continue;
+			}
+			f.setAccessible(true);
+			Column column = new Column(f);
+			all.add(column);
+			if (column.type == TYPE_OTHER) {
+				others.add(column);
+			} else {
+				values.add(column);
+			}
+			if (column.unique) {
+				uniques.add(column);
+			}
+			if (column.fullText) {
+				fullTexts.add(column);
+			}
+			if (column.orderBy != null) {
+				orders.add(column);
+				if (column.orderBy.orderPosition() != 0) {
+					isSort = true;
+				}
+			}
+		}
+		binder = findBinder(clazz, values);
+		columns = all.toArray(new Column[all.size()]);
+		valueColumns = values.toArray(new Column[values.size()]);
+		otherColumns = others.toArray(new Column[others.size()]);
+		uniqueColumns = uniques.toArray(new Column[uniques.size()]);
+		orderBy = buildOrderBy(orders, isSort);
+		indexes = buildIndexes(clazz, all, uniques);
+		uniqueIndex = uniques.isEmpty() ? null : indexes[0];
+		fullTextColumns = fullTexts.toArray(new Column[fullTexts.size()]);
+		constructor = findConstructor(clazz);
+	}
+
+	private static boolean isNotExcept(Field f) {
+		return !Modifier.isTransient(f.getModifiers()) && !Modifier.isStatic(f.getModifiers()) && f.getAnnotation(Expose.class) == null;
+	}
+
+	private static TableIndex[] buildIndexes(Class<?> clazz, List<Column> all, List<Column> uniques) {
+		String tableName = clazz.getSimpleName();
+		Map<String, TableIndex> indexes = new LinkedHashMap<>();
+		if (!uniques.isEmpty()) {
+			String[] names = new String[uniques.size()];
+			for (int i = 0; i < names.length; i++) {
+				names[i] = uniques.get(i).name;
+			}
+			TableIndex index = new TableIndex(tableName, names, true);
+			indexes.put(index.name, index);
+		}
+		for (Column column : all) {
+			Index annotation = column.field.getAnnotation(Index.class);
+			if (annotation != null && column.type != TYPE_OTHER) {
+				TableIndex index = new TableIndex(tableName, new String[]{column.name}, annotation.unique());
+				indexes.put(index.name, index);
+			}
+		}
+		Index annotation = clazz.getAnnotation(Index.class);
+		for (int i = 0; annotation != null && i < annotation.value().length; i++) {
+			String[] names = annotation.value()[i].split(",");
+			boolean isValid = true;
+			for (int j = 0; j < names.length; j++) {
+				names[j] = names[j].trim();
+				boolean isFound = false;
+				for (Column column : all) {
+					if (column.name.equals(names[j]) && column.type != TYPE_OTHER) {
+						isFound = true;
+						break;
+					}
+				}
+				if (!isFound) {
+					XLog.w(TAG, "the index column %s isn't found in %s.", names[j], clazz.getName());
+					isValid = false;
+				}
+			}
+			if (isValid) {
+				TableIndex index = new TableIndex(tableName, names, annotation.unique());
+				indexes.put(index.name, index);
+			}
+		}
+		return indexes.values().toArray(new TableIndex[indexes.size()]);
+	}
+
+	private static String buildOrderBy(List<Column> orders, boolean isSort) {
+		if (orders.isEmpty()) {
+			return null;
+		}
+		Column[] array = orders.toArray(new Column[orders.size()]);
+		for (int i = 0; i < array.length - 1 && isSort; i++) {
+			for (int j = 0; j < array.length - i - 1; j++) {
+				if (array[j].orderBy.orderPosition() > array[j + 1].orderBy.orderPosition()) {
+					Column temp = array[j];
+					array[j] = array[j + 1];
+					array[j + 1] = temp;
+				}
+			}
+		}
+		StringBuilder orderBy = new StringBuilder();
+		for (Column column : array) {
+			orderBy.append("`");
+			orderBy.append(column.name);
+			orderBy.append("`");
+			orderBy.append(column.orderBy.value() == SortAs.ASC ? " ASC" : " DESC");
+			orderBy.append(",");
+		}
+		orderBy.deleteCharAt(orderBy.length() - 1);
+		return orderBy.toString();
+	}
+
+	/**
+	 * find the generated binder. If it's found, the value columns are sorted as the binder's order.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T extends Serializable> EntityBinder<T> findBinder(Class<T> clazz, List<Column> values) {
+		Object binder;
+		try {
+			binder = Class.forName(clazz.getName() + BINDER_SUFFIX, true, clazz.getClassLoader()).newInstance();
+		} catch (Throwable e) {
+			return null;
+		}
+		if (!(binder instanceof EntityBinder)) {
+			return null;
+		}
+		String[] names = ((EntityBinder<T>) binder).columns();
+		List<Column> sorted = new ArrayList<>();
+		for (String name : names) {
+			for (Column column : values) {
+				if (column.name.equals(name)) {
+					sorted.add(column);
+					break;
+				}
+			}
+		}
+		if (sorted.size() != values.size() || new HashSet<>(Arrays.asList(names)).size() != names.length) {
+			XLog.w(TAG, "%s%s is out of date, use reflection instead.", clazz.getName(), BINDER_SUFFIX);
+			return null;
+		}
+		values.clear();
+		values.addAll(sorted);
+		return (EntityBinder<T>) binder;
+	}
+
+	private static <T> Constructor<T> findConstructor(Class<T> clazz) {
+		try {
+			Constructor<T> c = clazz.getDeclaredConstructor();
+			c.setAccessible(true);
+			return c;
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return has parameterless constructor, return true. otherwise false.
+	 */
+	public boolean hasConstructor() {
+		return constructor != null;
+	}
+
+	/**
+	 * @return true if the value columns are handled by the generated binder.
+	 */
+	public boolean hasBinder() {
+		return binder != null;
+	}
+
+	/**
+	 * Creates a new instance with the cached parameterless constructor.
+	 *
+	 * @return T
+	 * @throws Exception
+	 */
+	public T newInstance() throws Exception {
+		if (binder != null) {
+			return binder.newInstance();
+		}
+		if (constructor == null) {
+			throw new IllegalArgumentException(tableClass.getName() + " must be has a parameterless constructor.");
+		}
+		return constructor.newInstance();
+	}
+
+	/**
+	 * find the column by the name.
+	 *
+	 * @param name column name
+	 * @return Column or null
+	 */
+	public Column getColumn(String name) {
+		for (Column column : columns) {
+			if (column.name.equals(name)) {
+				return column;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * put the value columns of the bean to the ContentValues.
+	 *
+	 * @param bean   bean
+	 * @param values target
+	 * @throws Exception
+	 */
+	public void putValues(T bean, ContentValues values) throws Exception {
+		if (binder != null) {
+			binder.bind(bean, values);
+			return;
+		}
+		for (Column column : valueColumns) {
+			Object value = column.get(bean);
+			String name = column.name;
+			if (column.encrypt) {
+				putEncrypted(values, name, value);
+				continue;
+			}
+			switch (column.type) {
+				case TYPE_STRING:
+					values.put(name, (String) value);
+					break;
+				case TYPE_LONG:
+					values.put(name, (Long) value);
+					break;
+				case TYPE_INT:
+					values.put(name, (Integer) value);
+					break;
+				case TYPE_SHORT:
+					values.put(name, (Short) value);
+					break;
+				case TYPE_DOUBLE:
+					values.put(name, (Double) value);
+					break;
+				case TYPE_FLOAT:
+					values.put(name, (Float) value);
+					break;
+				case TYPE_BOOLEAN:
+					values.put(name, (Boolean) value);
+					break;
+				case TYPE_BLOB:
+					values.put(name, (byte[]) value);
+					break;
+				case TYPE_BYTE_ARRAY:
+					values.put(name, unbox((Byte[]) value));
+					break;
+				default:
+					break;
+			}
+		}
+	}
+
+	/**
+	 * bind the value columns of the bean to the statement, in the order of {@link #valueColumns}.
+	 *
+	 * @param bean      bean
+	 * @param statement target
+	 * @param offset    the bind index of the first column
+	 * @throws Exception
+	 */
+	public void bind(T bean, SQLiteStatement statement, int offset) throws Exception {
+		if (binder != null) {
+			binder.bind(bean, statement, offset);
+			return;
+		}
+		for (int i = 0; i < valueColumns.length; i++) {
+			bindValue(statement, offset + i, valueColumns[i], valueColumns[i].get(bean));
+		}
+	}
+
+	/**
+	 * bind the value of the column to the statement.
+	 *
+	 * @param statement target
+	 * @param index     bind index
+	 * @param column    column
+	 * @param value     plain value
+	 * @throws Exception
+	 */
+	public static void bindValue(SQLiteStatement statement, int index, Column column, Object value) throws Exception {
+		if (column.encrypt) {
+			bindEncrypted(statement, index, column.name, value);
+		} else if (value == null) {
+			statement.bindNull(index);
+		} else if (value instanceof String) {
+			statement.bindString(index, (String) value);
+		} else if (value instanceof Double || value instanceof Float) {
+			statement.bindDouble(index, ((Number) value).doubleValue());
+		} else if (value instanceof Number) {
+			statement.bindLong(index, ((Number) value).longValue());
+		} else if (value instanceof Boolean) {
+			statement.bindLong(index, (Boolean) value ? 1 : 0);
+		} else if (value instanceof byte[]) {
+			statement.bindBlob(index, (byte[]) value);
+		} else if (value instanceof Byte[]) {
+			statement.bindBlob(index, unbox((Byte[]) value));
+		} else {
+			statement.bindString(index, value.toString());
+		}
+	}
+
+	/**
+	 * resolve the column index of each value column in the cursor. -1 if the cursor doesn't contain it.
+	 *
+	 * @param c cursor
+	 * @return column indexes, in the order of {@link #valueColumns}
+	 */
+	public int[] getColumnIndexes(Cursor c) {
+		int[] indexes = new int[valueColumns.length];
+		for (int i = 0; i < valueColumns.length; i++) {
+			indexes[i] = c.getColumnIndex(valueColumns[i].name);
+		}
+		return indexes;
+	}
+
+	/**
+	 * set the value columns of the current row to the bean.
+	 *
+	 * @param bean    bean
+	 * @param c       cursor
+	 * @param indexes from {@link #getColumnIndexes(Cursor)}
+	 * @throws Exception
+	 */
+	public void fill(T bean, Cursor c, int[] indexes) throws Exception {
+		if (binder != null) {
+			binder.read(bean, c, indexes);
+			return;
+		}
+		for (int i = 0; i < valueColumns.length; i++) {
+			int columnIndex = indexes[i];
+			if (columnIndex == -1 || c.isNull(columnIndex)) {
+				continue;
+			}
+			Column column = valueColumns[i];
+			if (column.encrypt) {
+				column.field.set(bean, parse(column.type, readEncrypted(c, columnIndex, column.name)));
+				continue;
+			}
+			Field f = column.field;
+			switch (column.type) {
+				case TYPE_STRING:
+					f.set(bean, c.getString(columnIndex));
+					break;
+				case TYPE_LONG:
+					f.set(bean, c.getLong(columnIndex));
+					break;
+				case TYPE_INT:
+					f.set(bean, c.getInt(columnIndex));
+					break;
+				case TYPE_SHORT:
+					f.set(bean, c.getShort(columnIndex));
+					break;
+				case TYPE_DOUBLE:
+					f.set(bean, c.getDouble(columnIndex));
+					break;
+				case TYPE_FLOAT:
+					f.set(bean, c.getFloat(columnIndex));
+					break;
+				case TYPE_BOOLEAN:
+					f.set(bean, c.getInt(columnIndex) != 0);
+					break;
+				case TYPE_BLOB:
+					f.set(bean, c.getBlob(columnIndex));
+					break;
+				case TYPE_BYTE_ARRAY:
+					f.set(bean, box(c.getBlob(columnIndex)));
+					break;
+				default:
+					break;
+			}
+		}
+	}
+
+	/**
+	 * parse the column value to the java type.
+	 *
+	 * @param type  type code
+	 * @param value column value
+	 * @return the value
+	 */
+	public static Object parse(int type, String value) {
+		switch (type) {
+			case TYPE_STRING:
+				return value;
+			case TYPE_LONG:
+				return Long.valueOf(value);
+			case TYPE_INT:
+				return Integer.valueOf(value);
+			case TYPE_SHORT:
+				return Short.valueOf(value);
+			case TYPE_DOUBLE:
+				return Double.valueOf(value);
+			case TYPE_FLOAT:
+				return Float.valueOf(value);
+			case TYPE_BOOLEAN:
+				return "1".equals(value) || Boolean.valueOf(value);
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * put the encrypted value of the {@link Encrypt} column to the ContentValues.
+	 *
+	 * @param values target
+	 * @param column column name
+	 * @param value  plain value
+	 * @throws Exception
+	 */
+	public static void putEncrypted(ContentValues values, String column, Object value) throws Exception {
+		values.put(column, value == null ? null : encrypt(column, value));
+	}
+
+	/**
+	 * bind the encrypted value of the {@link Encrypt} column to the statement.
+	 *
+	 * @param statement target
+	 * @param index     bind index
+	 * @param column    column name
+	 * @param value     plain value
+	 * @throws Exception
+	 */
+	public static void bindEncrypted(SQLiteStatement statement, int index, String column, Object value) throws Exception {
+		if (value == null) {
+			statement.bindNull(index);
+		} else {
+			statement.bindBlob(index, encrypt(column, value));
+		}
+	}
+
+	private static byte[] encrypt(String column, Object value) throws Exception {
+		return DBUtils.getColumnCipher().encrypt(column, value.toString().getBytes(CHARSET));
+	}
+
+	/**
+	 * read and decrypt the value of the {@link Encrypt} column. The TEXT value is the legacy Base64 of DES.
+	 *
+	 * @param c           cursor
+	 * @param columnIndex column index
+	 * @param column      column name
+	 * @return plain value
+	 * @throws Exception
+	 */
+	public static String readEncrypted(Cursor c, int columnIndex, String column) throws Exception {
+		if (c.isNull(columnIndex)) {
+			return null;
+		}
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+			if (c.getType(columnIndex) == Cursor.FIELD_TYPE_STRING) {
+				return DESUtil.decrypt(c.getString(columnIndex), column);
+			}
+		} else {
+			try {// the BLOB can't be read as a string.
+				return DESUtil.decrypt(c.getString(columnIndex), column);
+			} catch (SQLiteException ignored) {
+			}
+		}
+		return new String(DBUtils.getColumnCipher().decrypt(column, c.getBlob(columnIndex)), CHARSET);
+	}
+
+	public static byte[] unbox(Byte[] value) {
+		if (value == null) {
+			return null;
+		}
+		byte[] bytes = new byte[value.length];
+		for (int i = 0; i < value.length; i++) {
+			bytes[i] = value[i] == null ? 0 : value[i];
+		}
+		return bytes;
+	}
+
+	public static Byte[] box(byte[] value) {
+		Byte[] bytes = new Byte[value.length];
+		for (int i = 0; i < value.length; i++) {
+			bytes[i] = value[i];
+		}
+		return bytes;
+	}
+
+	private static int getType(Class<?> type) {
+		if (type == String.class) {
+			return TYPE_STRING;
+		} else if (type == Long.class || type == long.class) {
+			return TYPE_LONG;
+		} else if (type == Integer.class || type == int.class) {
+			return TYPE_INT;
+		} else if (type == Short.class || type == short.class) {
+			return TYPE_SHORT;
+		} else if (type == Double.class || type == double.class) {
+			return TYPE_DOUBLE;
+		} else if (type == Float.class || type == float.class) {
+			return TYPE_FLOAT;
+		} else if (type == Boolean.class || type == boolean.class) {
+			return TYPE_BOOLEAN;
+		} else if (type == byte[].class) {
+			return TYPE_BLOB;
+		} else if (type == Byte[].class) {
+			return TYPE_BYTE_ARRAY;
+		}
+		return TYPE_OTHER;
+	}
+
+	/**
+	 * the column affinity of the type code. The encrypted values are stored as BLOB.
+	 *
+	 * @param type    type code
+	 * @param encrypt is {@link Encrypt} column
+	 * @return affinity
+	 */
+	public static String getAffinity(int type, boolean encrypt) {
+		if (encrypt) {
+			return AFFINITY_BLOB;
+		}
+		switch (type) {
+			case TYPE_LONG:
+			case TYPE_INT:
+			case TYPE_SHORT:
+			case TYPE_BOOLEAN:
+				return AFFINITY_INTEGER;
+			case TYPE_DOUBLE:
+			case TYPE_FLOAT:
+				return AFFINITY_REAL;
+			case TYPE_BLOB:
+			case TYPE_BYTE_ARRAY:
+				return AFFINITY_BLOB;
+			default:
+				return AFFINITY_TEXT;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "EntityMapper [tableClass=" + tableClass + ", columns=" + columns.length + ", orderBy=" + orderBy + "]";
+	}
+
+	/**
+	 * A column of the table, which is mapped from a field.
+	 *
+	 * @author Luki
+	 */
+	public static class Column {
+		public final Field field;
+		public final String name;
+		public final int type;
+		public final boolean encrypt;
+		public final boolean unique;
+		public final boolean notNull;
+		/** the {@link FullText} column. */
+		public final boolean fullText;
+		/** the declared type in the table. */
+		public final String affinity;
+		public final OrderBy orderBy;
+		/** the original names from {@link Rename}. */
+		public final String[] renames;
+		/** the bean class of the relation column, null if it's not a relation column. */
+		public final Class<? extends Serializable> relationClass;
+		/** the relation column is a list. */
+		public final boolean isList;
+		/** the list of beans, which is stored in the link table instead of a column. */
+		public final boolean isLink;
+
+		@SuppressWarnings("unchecked")
+		Column(Field field) {
+			this.field = field;
+			this.name = field.getName();
+			this.type = ReflectUtils.isNormalGenericType(field.getGenericType()) ? getType(field.getType()) : TYPE_OTHER;
+			this.encrypt = field.getAnnotation(Encrypt.class) != null && type != TYPE_BLOB && type != TYPE_BYTE_ARRAY;
+			this.unique = field.getAnnotation(Unique.class) != null;
+			this.notNull = field.getAnnotation(NotNull.class) != null;
+			this.fullText = field.getAnnotation(FullText.class) != null && type == TYPE_STRING && !encrypt;
+			if (!fullText && field.getAnnotation(FullText.class) != null) {
+				XLog.w(TAG, "@FullText of %s is ignored, it only works on the String column without @Encrypt.", field.getName());
+			}
+			this.affinity = getAffinity(type, encrypt);
+			this.orderBy = field.getAnnotation(OrderBy.class);
+			Rename r = field.getAnnotation(Rename.class);
+			List<String> names = new ArrayList<>();
+			if (r != null) {
+				for (String s : r.value()) {
+					if (!TextUtils.isEmpty(s)) {
+						names.add(s);
+					}
+				}
+			}
+			this.renames = names.toArray(new String[names.size()]);
+			this.isList = field.getType() == List.class || field.getType() == ArrayList.class;
+			Class<?> clazz = type == TYPE_OTHER ? ReflectUtils.getFieldClass(field) : null;
+			this.relationClass = clazz != null && Serializable.class.isAssignableFrom(clazz) && !ReflectUtils.isNormalGenericType(clazz)
+					? (Class<? extends Serializable>) clazz : null;
+			this.isLink = isList && relationClass != null;
+		}
+
+		public Object get(Object bean) throws IllegalAccessException {
+			return field.get(bean);
+		}
+
+		public void set(Object bean, Object value) throws IllegalAccessException {
+			field.set(bean, value);
+		}
+
+		@Override
+		public String toString() {
+			return "Column [name=" + name + ", type=" + type + ", affinity=" + affinity + "]";
+		}
+	}
+
+	/**
+	 * the index of the table. The name is made of the table name, the columns and whether it's unique, so the
+	 * indexes in the database can be matched with the names only.
+	 *
+	 * @author Luki
+	 */
+	public static class TableIndex {
+
+		public final String name;
+		public final String[] columns;
+		public final boolean unique;
+
+		public TableIndex(String tableName, String[] columns, boolean unique) {
+			this.columns = columns;
+			this.unique = unique;
+			this.name = (unique ? UNIQUE_INDEX_PREFIX : INDEX_PREFIX) + tableName + "_" + TextUtils.join("_", columns);
+		}
+
+		/**
+		 * @param tableName table name
+		 * @return create index sql
+		 */
+		public String getCreateSQL(String tableName) {
+			StringBuilder sql = new StringBuilder("CREATE ");
+			if (unique) {
+				sql.append("UNIQUE ");
+			}
+			sql.append("INDEX IF NOT EXISTS `").append(name).append("` ON `").append(tableName).append("`(");
+			for (int i = 0; i < columns.length; i++) {
+				if (i > 0) {
+					sql.append(",");
+				}
+				sql.append("`").append(columns[i]).append("`");
+			}
+			sql.append(")");
+			return sql.toString();
+		}
+
+		@Override
+		public String toString() {
+			return "TableIndex [name=" + name + ", unique=" + unique + "]";
+		}
+	}
+}
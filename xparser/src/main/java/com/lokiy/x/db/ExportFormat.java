@@ -0,0 +1,35 @@
+/**
+ * Copyright (C) 2014 Luki(liulongke@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lokiy.x.db;
+
+/**
+ * The format of {@link DBHelper#export(Class, java.io.OutputStream, ExportFormat)} and
+ * {@link DBHelper#importSnapshot(Class, java.io.InputStream, ExportFormat)}.
+ *
+ * @author Luki
+ */
+public enum ExportFormat {
+	/**
+	 * one JSON object per line, the names are the column names, and the encrypted values are decrypted. It's for
+	 * the servers.
+	 */
+	JSON_LINES,
+	/**
+	 * the stored values of the columns with their types, and the encrypted values stay encrypted. It's for the backups
+	 * of the database.
+	 */
+	BINARY
+}
@@ -0,0 +1,185 @@
+/**
+ * Copyright (C) 2014 Luki(liulongke@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lokiy.x.db;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * First-level cache of the beans which are read from a database, keyed by the table and the primary key, and
+ * optionally by the unique key. It's bounded by LRU and the entries of a table are dropped when the table is
+ * written. Each table has a generation which is increased by it, and the beans which are read from an older
+ * generation aren't put.
+ *
+ * @author Luki
+ */
+public class IdentityMap {
+
+	private final int maxSize;
+	/** table#_id => entry, in access order. */
+	private final LinkedHashMap<String, CacheEntry> entryMap;
+	/** table#unique key => table#_id */
+	private final Map<String, String> uniqueKeyMap = new HashMap<>();
+	/** table name => generation */
+	private final Map<String, Long> generationMap = new HashMap<>();
+	private long hitCount;
+	private long missCount;
+
+	/**
+	 * @param maxSize the max count of the beans
+	 */
+	public IdentityMap(final int maxSize) {
+		this.maxSize = maxSize;
+		this.entryMap = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+				if (size() > maxSize) {
+					if (eldest.getValue().uniqueKey != null) {
+						uniqueKeyMap.remove(eldest.getValue().uniqueKey);
+					}
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * @param tableName table name
+	 * @param _id       primary key
+	 * @return the bean, null if it isn't cached.
+	 */
+	public synchronized Serializable get(String tableName, long _id) {
+		CacheEntry entry = entryMap.get(tableName + "#" + _id);
+		if (entry == null) {
+			missCount++;
+			return null;
+		}
+		hitCount++;
+		return entry.bean;
+	}
+
+	/**
+	 * @param tableName table name
+	 * @param uniqueKey the joined values of the unique columns
+	 * @return the bean, null if it isn't cached.
+	 */
+	public synchronized Serializable getByUniqueKey(String tableName, String uniqueKey) {
+		String key = uniqueKeyMap.get(tableName + "#" + uniqueKey);
+		CacheEntry entry = key == null ? null : entryMap.get(key);
+		if (entry == null) {
+			missCount++;
+			return null;
+		}
+		hitCount++;
+		return entry.bean;
+	}
+
+	/**
+	 * @param tableName table name
+	 * @return the current generation of the table, it should be got before querying.
+	 */
+	public synchronized long getGeneration(String tableName) {
+		Long generation = generationMap.get(tableName);
+		return generation == null ? 0 : generation;
+	}
+
+	/**
+	 * @param tableName  table name
+	 * @param generation the generation of the table before querying, the bean isn't put if the table is written
+	 *                   after it.
+	 * @param _id        primary key
+	 * @param uniqueKey  the joined values of the unique columns, can be null.
+	 * @param bean       the bean which is read completely
+	 */
+	public synchronized void put(String tableName, long generation, long _id, String uniqueKey, Serializable bean) {
+		if (generation != getGeneration(tableName)) {
+			return;
+		}
+		String key = tableName + "#" + _id;
+		CacheEntry old = entryMap.remove(key);
+		if (old != null && old.uniqueKey != null) {
+			uniqueKeyMap.remove(old.uniqueKey);
+		}
+		CacheEntry entry = new CacheEntry(tableName, uniqueKey == null ? null : tableName + "#" + uniqueKey, bean);
+		entryMap.put(key, entry);
+		if (entry.uniqueKey != null) {
+			uniqueKeyMap.put(entry.uniqueKey, key);
+		}
+	}
+
+	/**
+	 * drop the beans of the table and increase its generation.
+	 *
+	 * @param tableName table name
+	 */
+	public synchronized void removeTable(String tableName) {
+		generationMap.put(tableName, getGeneration(tableName) + 1);
+		Iterator<CacheEntry> iterator = entryMap.values().iterator();
+		while (iterator.hasNext()) {
+			CacheEntry entry = iterator.next();
+			if (entry.tableName.equals(tableName)) {
+				if (entry.uniqueKey != null) {
+					uniqueKeyMap.remove(entry.uniqueKey);
+				}
+				iterator.remove();
+			}
+		}
+	}
+
+	public synchronized void clear() {
+		entryMap.clear();
+		uniqueKeyMap.clear();
+	}
+
+	public synchronized int size() {
+		return entryMap.size();
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "IdentityMap [size=" + entryMap.size() + ", maxSize=" + maxSize + ", hitCount=" + hitCount + ", missCount=" + missCount + "]";
+	}
+
+	private static class CacheEntry {
+
+		final String tableName;
+		final String uniqueKey;
+		final Serializable bean;
+
+		CacheEntry(String tableName, String uniqueKey, Serializable bean) {
+			this.tableName = tableName;
+			this.uniqueKey = uniqueKey;
+			this.bean = bean;
+		}
+	}
+}
@@ -0,0 +1,31 @@
+/**
+ * Copyright (C) 2014 Luki(liulongke@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lokiy.x.db;
+
+/**
+ * Listener of the rebuilding of a table, which copies the rows in chunks. It's called on the migrating thread.
+ *
+ * @author Luki
+ */
+public interface MigrationListener {
+
+	/**
+	 * @param tableName  table name
+	 * @param copiedRows the copied rows, including the rows copied before the rebuilding is resumed
+	 * @param totalRows  the rows of the original table
+	 */
+	void onProgress(String tableName, long copiedRows, long totalRows);
+}
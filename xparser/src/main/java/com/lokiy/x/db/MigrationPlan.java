@@ -0,0 +1,58 @@
+/**
+ * Copyright (C) 2014 Luki(liulongke@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lokiy.x.db;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The changes of a table to match its class, which are planned from the table columns, the field types and the
+ * {@link com.lokiy.x.db.annotation.Rename} annotations before any of them is done.
+ *
+ * @author Luki
+ */
+public class MigrationPlan {
+
+	public String tableName;
+	/** the new columns, which are added by ALTER TABLE ... ADD COLUMN if the table isn't rebuilt. */
+	public List<String> addColumns = new ArrayList<>();
+	/** original column => new column, which are renamed by ALTER TABLE ... RENAME COLUMN if the table isn't rebuilt. */
+	public Map<String, String> renameColumns = new LinkedHashMap<>();
+	/** the legacy list columns, whose rowIDs are moved to the link tables before the rebuilding. */
+	public List<String> linkColumns = new ArrayList<>();
+	/** whether the rows are copied into a new table, because a column type is changed or a column can't be renamed. */
+	public boolean isRebuild;
+	/** the columns of the new table and the expressions of the original table copied to them, for the rebuilding. */
+	public String newColumns;
+	public String originalColumns;
+	/** the row count of the table, which is only counted for the rebuilding. */
+	public long rowCount;
+
+	/**
+	 * @return true if the table matches the class.
+	 */
+	public boolean isEmpty() {
+		return !isRebuild && addColumns.isEmpty() && renameColumns.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		return "MigrationPlan [tableName=" + tableName + ", addColumns=" + addColumns + ", renameColumns=" + renameColumns + ", linkColumns="
+				+ linkColumns + ", isRebuild=" + isRebuild + ", rowCount=" + rowCount + "]";
+	}
+}
@@ -0,0 +1,35 @@
+/**
+ * Copyright (C) 2014 Luki(liulongke@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lokiy.x.db;
+
+import com.lokiy.x.task.OnTaskCallBack;
+
+/**
+ * The callback of {@link AsyncDBHelper} which is told the failures. A failed task of a plain {@link OnTaskCallBack}
+ * calls neither {@link #onResult(Object)} nor {@link #onCancel()}.
+ *
+ * @author Luki
+ * @param <T>
+ */
+public interface OnDBCallBack<T> extends OnTaskCallBack<T> {
+
+	/**
+	 * the task threw, it's called on the main thread.
+	 *
+	 * @param e the exception of the task
+	 */
+	void onError(Throwable e);
+}
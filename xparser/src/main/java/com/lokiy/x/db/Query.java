@@ -0,0 +1,268 @@
+/**
+ * Copyright (C) 2014 Luki(liulongke@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lokiy.x.db;
+
+import com.lokiy.x.db.EntityMapper.Column;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Fluent query of a table, e.g.
+ * <code>helper.from(User.class).where("age").gt(18).and("name").like("L%").orderBy("age", false).limit(20).list()</code>.<BR>
+ * The columns are checked with the {@link EntityMapper} of the class. The values are always bound as arguments, so
+ * the same shape of the query produces the same SQL, which is prepared once and reused by SQLite. AND binds tighter
+ * than OR, as in SQL.
+ *
+ * @author Luki
+ * @param <T>
+ */
+public class Query<T extends Serializable> {
+
+	private final DBHelper helper;
+	private final Class<T> clazz;
+	private final EntityMapper<T> mapper;
+	private final StringBuilder where = new StringBuilder();
+	private final List<String> args = new ArrayList<>();
+	private final StringBuilder orderBy = new StringBuilder();
+	private String connector;
+	private Column column;
+	private int limit;
+	private int offset;
+	private String[] columns;
+
+	Query(DBHelper helper, Class<T> clazz) {
+		this.helper = helper;
+		this.clazz = clazz;
+		this.mapper = EntityMapper.of(clazz);
+	}
+
+	/**
+	 * start the first condition.
+	 *
+	 * @param column field name
+	 * @return this
+	 */
+	public Query<T> where(String column) {
+		return condition(" AND ", column);
+	}
+
+	public Query<T> and(String column) {
+		return condition(" AND ", column);
+	}
+
+	public Query<T> or(String column) {
+		return condition(" OR ", column);
+	}
+
+	private Query<T> condition(String connector, String name) {
+		if (this.column != null) {
+			throw new IllegalStateException("the condition of " + this.column.name + " isn't completed.");
+		}
+		Column column = mapper.getColumn(name);
+		if (column == null || column.type == EntityMapper.TYPE_OTHER) {
+			throw new IllegalArgumentException(name + " isn't a column of " + clazz.getName());
+		}
+		this.connector = connector;
+		this.column = column;
+		return this;
+	}
+
+	public Query<T> eq(Object value) {
+		return value == null ? isNull() : operator("=?", value);
+	}
+
+	public Query<T> notEq(Object value) {
+		return value == null ? notNull() : operator("!=?", value);
+	}
+
+	public Query<T> gt(Object value) {
+		return operator(">?", value);
+	}
+
+	public Query<T> ge(Object value) {
+		return operator(">=?", value);
+	}
+
+	public Query<T> lt(Object value) {
+		return operator("<?", value);
+	}
+
+	public Query<T> le(Object value) {
+		return operator("<=?", value);
+	}
+
+	/**
+	 * @param pattern LIKE pattern, e.g. "L%"
+	 */
+	public Query<T> like(String pattern) {
+		return operator(" LIKE ?", pattern);
+	}
+
+	public Query<T> between(Object from, Object to) {
+		return operator(" BETWEEN ? AND ?", from, to);
+	}
+
+	public Query<T> in(Object... values) {
+		return in(Arrays.asList(values));
+	}
+
+	public Query<T> in(Collection<?> values) {
+		if (values.isEmpty()) {// nothing matches.
+			checkColumn();
+			append("0");
+			return this;
+		}
+		StringBuilder operator = new StringBuilder(" IN (");
+		for (int i = 0; i < values.size(); i++) {
+			operator.append(i == 0 ? "?" : ",?");
+		}
+		return operator(operator.append(")").toString(), values.toArray());
+	}
+
+	public Query<T> isNull() {
+		return operator(" IS NULL");
+	}
+
+	public Query<T> notNull() {
+		return operator(" IS NOT NULL");
+	}
+
+	private Query<T> operator(String operator, Object... values) {
+		Column column = checkColumn();
+		if (column.encrypt && values.length > 0) {
+			throw new IllegalArgumentException("the encrypted column " + column.name + " can't be compared.");
+		}
+		for (Object value : values) {
+			if (value == null) {
+				throw new IllegalArgumentException("the value of " + column.name + " can't be null.");
+			}
+			args.add(value instanceof Boolean ? ((Boolean) value ? "1" : "0") : String.valueOf(value));
+		}
+		append("`" + column.name + "`" + operator);
+		return this;
+	}
+
+	private Column checkColumn() {
+		if (column == null) {
+			throw new IllegalStateException("where(column) should be called before the operator.");
+		}
+		return column;
+	}
+
+	private void append(String condition) {
+		if (where.length() > 0) {
+			where.append(connector);
+		}
+		where.append(condition);
+		column = null;
+	}
+
+	/**
+	 * @param column      field name
+	 * @param isAscending ASC or DESC
+	 * @return this
+	 */
+	public Query<T> orderBy(String column, boolean isAscending) {
+		Column c = mapper.getColumn(column);
+		if (c == null) {
+			throw new IllegalArgumentException(column + " isn't a column of " + clazz.getName());
+		}
+		if (orderBy.length() > 0) {
+			orderBy.append(",");
+		}
+		orderBy.append("`").append(c.name).append("`").append(isAscending ? " ASC" : " DESC");
+		return this;
+	}
+
+	public Query<T> limit(int limit) {
+		this.limit = limit;
+		return this;
+	}
+
+	public Query<T> offset(int offset) {
+		this.offset = offset;
+		return this;
+	}
+
+	/**
+	 * @param columns the fields to select, see {@link DBSelection#columns(String...)}
+	 * @return this
+	 */
+	public Query<T> columns(String... columns) {
+		this.columns = columns;
+		return this;
+	}
+
+	/**
+	 * @return the selection of the query.
+	 */
+	public DBSelection<T> toSelection() {
+		checkCompleted();
+		DBSelection<T> selection = new DBSelection<>();
+		selection.selection = where.length() == 0 ? null : where.toString();
+		selection.selectionArgs = args.toArray(new String[args.size()]);
+		selection.orderBy = orderBy.length() == 0 ? mapper.orderBy : orderBy.toString();
+		selection.limit = limit;
+		selection.offset = offset;
+		selection.columns = columns;
+		return selection;
+	}
+
+	private void checkCompleted() {
+		if (column != null) {
+			throw new IllegalStateException("the condition of " + column.name + " isn't completed.");
+		}
+	}
+
+	public List<T> list() {
+		return helper.selectBySelection(clazz, toSelection());
+	}
+
+	public T first() {
+		return helper.findBySelection(clazz, toSelection());
+	}
+
+	/**
+	 * @return the lazy list, it must be closed after using.
+	 */
+	public CursorList<T> cursor() {
+		return helper.query(clazz, toSelection());
+	}
+
+	public long count() {
+		return helper.count(clazz, toSelection());
+	}
+
+	public boolean exists() {
+		return helper.exists(clazz, toSelection());
+	}
+
+	/**
+	 * @return the number of rows deleted.
+	 */
+	public int delete() {
+		return helper.deleteBySelection(clazz, toSelection());
+	}
+
+	@Override
+	public String toString() {
+		return "Query [class=" + clazz.getSimpleName() + ", where=" + where + ", args=" + args + ", orderBy=" + orderBy + "]";
+	}
+}
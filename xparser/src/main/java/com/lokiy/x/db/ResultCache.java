@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) 2014 Luki(liulongke@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lokiy.x.db;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache of the query results, keyed by the table and the query. Each table has a version which is increased when
+ * the table is written, and the results which are read from an older version are dropped. It's bounded by the count
+ * of the results and their estimated bytes, the least recently used results are removed first.
+ *
+ * @author Luki
+ */
+public class ResultCache {
+
+	private final int maxCount;
+	private final long maxBytes;
+	private long bytes;
+	/** query key => result, in access order. */
+	private final LinkedHashMap<String, Result> resultMap = new LinkedHashMap<>(16, 0.75f, true);
+	/** table name => version */
+	private final Map<String, Long> versionMap = new HashMap<>();
+	private long hitCount;
+	private long missCount;
+
+	/**
+	 * @param maxCount the max count of the results
+	 * @param maxBytes the max estimated bytes of the results, 0 means no limit.
+	 */
+	public ResultCache(int maxCount, long maxBytes) {
+		this.maxCount = maxCount;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @param tableName table name
+	 * @return the current version of the table, it should be got before querying.
+	 */
+	public synchronized long getVersion(String tableName) {
+		Long version = versionMap.get(tableName);
+		return version == null ? 0 : version;
+	}
+
+	/**
+	 * increase the version of the table, so its results are dropped.
+	 *
+	 * @param tableName table name
+	 */
+	public synchronized void increaseVersion(String tableName) {
+		versionMap.put(tableName, getVersion(tableName) + 1);
+	}
+
+	/**
+	 * @param tableName table name
+	 * @param key       query key
+	 * @return a copy of the cached result, null if it isn't cached or out of date.
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized <T extends Serializable> List<T> get(String tableName, String key) {
+		Result result = resultMap.get(key);
+		if (result != null && result.version != getVersion(tableName)) {
+			remove(key);
+			result = null;
+		}
+		if (result == null) {
+			missCount++;
+			return null;
+		}
+		hitCount++;
+		return new ArrayList<>((List<T>) result.list);
+	}
+
+	/**
+	 * @param tableName table name
+	 * @param key       query key
+	 * @param version   the version of the table before querying
+	 * @param list      result
+	 * @param size      the estimated bytes of the result
+	 */
+	public synchronized void put(String tableName, String key, long version, List<? extends Serializable> list, long size) {
+		if (version != getVersion(tableName) || (maxBytes > 0 && size > maxBytes)) {
+			return;
+		}
+		remove(key);
+		resultMap.put(key, new Result(version, new ArrayList<>(list), size));
+		bytes += size;
+		while (!resultMap.isEmpty() && (resultMap.size() > maxCount || (maxBytes > 0 && bytes > maxBytes))) {
+			remove(resultMap.keySet().iterator().next());
+		}
+	}
+
+	private void remove(String key) {
+		Result result = resultMap.remove(key);
+		if (result != null) {
+			bytes -= result.size;
+		}
+	}
+
+	public synchronized void clear() {
+		resultMap.clear();
+		bytes = 0;
+	}
+
+	public synchronized int size() {
+		return resultMap.size();
+	}
+
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "ResultCache [size=" + resultMap.size() + ", bytes=" + bytes + ", hitCount=" + hitCount + ", missCount=" + missCount + "]";
+	}
+
+	private static class Result {
+
+		final long version;
+		final List<? extends Serializable> list;
+		final long size;
+
+		Result(long version, List<? extends Serializable> list, long size) {
+			this.version = version;
+			this.list = list;
+			this.size = size;
+		}
+	}
+}
@@ -30,6 +30,14 @@ import android.database.sqlite.SQLiteOpenHelper;
 	public void onCreate(SQLiteDatabase db) {
 	}
 
+	@Override
+	public void onOpen(SQLiteDatabase db) {
+		super.onOpen(db);
+		if (!db.isReadOnly()) {// the link tables delete their rows by the foreign keys.
+			db.execSQL("PRAGMA foreign_keys=ON;");
+		}
+	}
+
 	@Override
 	public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
 	}
@@ -32,6 +32,11 @@ public class Table<T extends Serializable> {
 	public Class<T> tableClass;
 	public boolean isExist;
 	public List<Field> otherTypeField = new ArrayList<>();
+	public EntityMapper<T> mapper;
+	/** whether the unique index of the unique columns exists, which the conflict of inserting depends on. */
+	public boolean hasUniqueIndex;
+	/** whether the table is created and migrated, the fields above are visible to all threads once it's true. */
+	public volatile boolean ready;
 
 	public DBSelection<T> uniqueSelection;
 
@@ -25,7 +25,7 @@ import java.io.Serializable;
  * 
  * @author Luki
  */
-@TableVersion(1)
+@TableVersion(3)
 public class TableInfo implements Serializable {
 
 	/**
@@ -37,5 +37,9 @@ public class TableInfo implements Serializable {
 	public String tableName;
 	public String tableClass;
 	public int tableVersion = 1;
+	/** the digest of the checked schema, the checks are skipped while the class matches it. */
+	public String schemaHash;
+	/** the unique indexes which fell back to the normal indexes, split by ",". They're retried on a version bump. */
+	public String fallbackIndexes;
 
 }
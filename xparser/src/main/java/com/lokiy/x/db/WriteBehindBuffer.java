@@ -0,0 +1,168 @@
+/**
+ * Copyright (C) 2014 Luki(liulongke@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lokiy.x.db;
+
+import com.lokiy.x.XLog;
+import com.lokiy.x.db.EntityMapper.Column;
+import com.lokiy.x.db.util.DBUtils;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind buffer of {@link DBHelper#saveLater(Serializable)}. The beans with the same unique key are coalesced
+ * to the latest one, and the buffer is saved in one transaction after the flush interval or when it's full.
+ *
+ * @author Luki
+ */
+/*public*/ class WriteBehindBuffer {
+
+	private static final String TAG = WriteBehindBuffer.class.getSimpleName();
+
+	private final DBUtils dbUtils;
+	private final long flushInterval;
+	private final int maxCount;
+	/** class name + unique key => the latest bean. */
+	private final Map<String, Serializable> pending = new LinkedHashMap<>();
+	/** serializes the flushing, so the flushed beans are written in order. */
+	private final Object flushLock = new Object();
+	private final ScheduledExecutorService executor;
+	/** whether some beans are pending or being flushed. */
+	private volatile boolean dirty;
+	private boolean isScheduled;
+	private long sequence;
+
+	private final Runnable flushTask = new Runnable() {
+		@Override
+		public void run() {
+			flush();
+		}
+	};
+
+	WriteBehindBuffer(DBUtils dbUtils, final String dbName, long flushInterval, int maxCount) {
+		this.dbUtils = dbUtils;
+		this.flushInterval = flushInterval;
+		this.maxCount = maxCount;
+		this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "XDB flush " + dbName);
+				thread.setDaemon(true);
+				thread.setPriority(Thread.NORM_PRIORITY - 1);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * add the bean to the buffer, it replaces the pending bean with the same unique key.
+	 *
+	 * @param bean bean
+	 */
+	<T extends Serializable> void add(T bean) {
+		String key = getKey(bean);
+		synchronized (pending) {
+			pending.remove(key);
+			pending.put(key, bean);
+			dirty = true;
+			if (pending.size() >= maxCount) {
+				executor.execute(flushTask);
+			} else if (!isScheduled) {
+				isScheduled = true;
+				executor.schedule(flushTask, flushInterval, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	/**
+	 * save the pending beans if there are any, and wait for the flushing of other threads.
+	 */
+	void flushIfDirty() {
+		if (dirty) {
+			flush();
+		}
+	}
+
+	/**
+	 * save all the pending beans in one transaction.
+	 */
+	void flush() {
+		synchronized (flushLock) {
+			List<Serializable> list;
+			synchronized (pending) {
+				isScheduled = false;
+				if (pending.isEmpty()) {
+					dirty = false;
+					return;
+				}
+				list = new ArrayList<>(pending.values());
+				pending.clear();
+			}
+			int count = dbUtils.save(list);
+			if (count < list.size()) {
+				XLog.w(TAG, "flush %d beans, %d saved", list.size(), count);
+			}
+			synchronized (pending) {
+				dirty = !pending.isEmpty();
+			}
+		}
+	}
+
+	/**
+	 * flush the pending beans and stop the flushing thread.
+	 */
+	void close() {
+		flush();
+		executor.shutdown();
+	}
+
+	/**
+	 * @return class name + unique key, or a sequence number if the bean hasn't unique columns, which isn't coalesced.
+	 */
+	private <T extends Serializable> String getKey(T bean) {
+		@SuppressWarnings("unchecked")
+		Class<T> clazz = (Class<T>) bean.getClass();
+		Column[] uniqueColumns = EntityMapper.of(clazz).uniqueColumns;
+		StringBuilder key = new StringBuilder(clazz.getName());
+		if (uniqueColumns.length == 0) {
+			synchronized (pending) {
+				return key.append('#').append(sequence++).toString();
+			}
+		}
+		for (Column column : uniqueColumns) {
+			Object value;
+			try {
+				value = column.get(bean);
+			} catch (IllegalAccessException e) {
+				value = null;
+			}
+			if (value == null) {// the null unique key doesn't match any row, it's never coalesced.
+				synchronized (pending) {
+					return key.append('#').append(sequence++).toString();
+				}
+			}
+			key.append('\u0001').append(value);
+		}
+		return key.toString();
+	}
+}
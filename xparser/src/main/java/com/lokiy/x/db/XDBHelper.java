@@ -17,11 +17,18 @@ package com.lokiy.x.db;
 
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
+
+import com.lokiy.x.XLog;
 
 import com.lokiy.x.db.util.DBUtils;
 
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.io.Serializable;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Simple DBHelper.
@@ -33,11 +40,52 @@ import java.util.List;
 	private SQLiteDatabase db;
 	private String dbName;
 	private DBUtils dbUtils;
+	private WriteBehindBuffer writeBuffer;
+
+	private static final String TAG = XDBHelper.class.getSimpleName();
 
 	XDBHelper(String dbName, Context context) {
+		this(dbName, context, DBConfig.createDefaultConfig());
+	}
+
+	XDBHelper(String dbName, Context context, DBConfig config) {
 		check(context);
-		db = new SQLHelper(context.getApplicationContext(), this.dbName = dbName, null, 1).getWritableDatabase();
+		SQLHelper helper = new SQLHelper(context.getApplicationContext(), this.dbName = dbName, null, 1);
+		boolean isWAL = config.writeAheadLogging && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+		if (isWAL && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+			helper.setWriteAheadLoggingEnabled(true);
+		}
+		db = helper.getWritableDatabase();
+		if (isWAL && Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN && !db.enableWriteAheadLogging()) {
+			XLog.w(TAG, "write-ahead logging isn't supported by " + dbName);
+		}
+		if (config.columnCipher != null) {
+			DBUtils.setColumnCipher(config.columnCipher);
+		}
 		dbUtils = DBUtils.getInstance(db, dbName, this);
+		if (config.identityMapSize > 0) {
+			dbUtils.setIdentityMapSize(config.identityMapSize);
+		}
+		if (config.resultCacheCount > 0) {
+			dbUtils.setResultCacheSize(config.resultCacheCount, config.resultCacheBytes);
+		}
+		if (config.migrationChunkSize > 0 || config.migrationListener != null) {
+			dbUtils.setMigration(config.migrationChunkSize > 0 ? config.migrationChunkSize : DBUtils.MIGRATION_CHUNK_SIZE,
+					config.migrationListener);
+		}
+		if (config.writeBehindCount > 0) {
+			writeBuffer = new WriteBehindBuffer(dbUtils, dbName, config.writeBehindInterval, config.writeBehindCount);
+		}
+	}
+
+	/**
+	 * save the pending beans of {@link #saveLater(Serializable)} before the other operations, so they read their writes
+	 * and keep the order of the writes.
+	 */
+	private void flushIfDirty() {
+		if (writeBuffer != null) {
+			writeBuffer.flushIfDirty();
+		}
 	}
 
 	/**
@@ -58,6 +106,7 @@ import java.util.List;
 	 * @return the row ID of the newly inserted row, or -1 if an error occurred or exist
 	 */
 	public <T extends Serializable> long insert(T t) {
+		flushIfDirty();
 		return dbUtils.insert(t);
 	}
 
@@ -68,6 +117,7 @@ import java.util.List;
 	 * @return the number of rows affected
 	 */
 	public <T extends Serializable> int update(T t) {
+		flushIfDirty();
 		return dbUtils.update(t);
 	}
 
@@ -78,6 +128,7 @@ import java.util.List;
 	 * @return the number of rows affected
 	 */
 	public <T extends Serializable> int save(T bean) {
+		flushIfDirty();
 		return dbUtils.save(bean);
 	}
 
@@ -88,6 +139,7 @@ import java.util.List;
 	 * @return the number of rows affected
 	 */
 	public <T extends Serializable> int save(List<T> list) {
+		flushIfDirty();
 		return dbUtils.save(list);
 	}
 
@@ -99,6 +151,7 @@ import java.util.List;
 	 * count pass "1" as the whereClause.
 	 */
 	public <T extends Serializable> int delete(List<T> list) {
+		flushIfDirty();
 		return dbUtils.delete(list);
 	}
 
@@ -111,6 +164,7 @@ import java.util.List;
 	 */
 	@SuppressWarnings("unchecked")
 	public <T extends Serializable> int delete(T t) {
+		flushIfDirty();
 		return dbUtils.delete(t);
 	}
 
@@ -122,6 +176,7 @@ import java.util.List;
 	 * count pass "1" as the whereClause.
 	 */
 	public <T extends Serializable> int deleteBySelection(Class<T> clazz, DBSelection<T> selection) {
+		flushIfDirty();
 		return dbUtils.deleteBySelection(clazz, selection);
 	}
 
@@ -132,6 +187,7 @@ import java.util.List;
 	 * @return T
 	 */
 	public <T extends Serializable> T findByBean(T bean) {
+		flushIfDirty();
 		return dbUtils.findByBean(bean);
 	}
 
@@ -144,6 +200,7 @@ import java.util.List;
 	 * @return clazz's instance
 	 */
 	public <T extends Serializable> T findBySelection(Class<T> clazz, DBSelection<T> selection) {
+		flushIfDirty();
 		return dbUtils.findBySelection(clazz, selection);
 	}
 
@@ -154,6 +211,7 @@ import java.util.List;
 	 * @return List
 	 */
 	public <T extends Serializable> List<T> selectByBean(T bean) {
+		flushIfDirty();
 		return dbUtils.selectByBean(bean);
 	}
 
@@ -166,10 +224,123 @@ import java.util.List;
 	 * @return clazz's instance
 	 */
 	public <T extends Serializable> List<T> selectBySelection(Class<T> clazz, DBSelection<T> selection) {
+		flushIfDirty();
 		return dbUtils.selectBySelection(clazz, selection);
 	}
 
+	/**
+	 * query the data with selection lazily.
+	 *
+	 * @param clazz     table and bean.
+	 * @param selection A filter declaring which rows to return, formatted as an SQL WHERE clause (excluding the WHERE
+	 *                  itself). Passing null will return all rows for the given table.
+	 * @return the lazy list backed by the cursor, it must be closed after using.
+	 */
+	public <T extends Serializable> CursorList<T> query(Class<T> clazz, DBSelection<T> selection) {
+		flushIfDirty();
+		return dbUtils.query(clazz, selection);
+	}
+
+	public <T extends Serializable> Query<T> from(Class<T> clazz) {
+		return new Query<>(this, clazz);
+	}
+
+	public <T extends Serializable> long count(Class<T> clazz, DBSelection<T> selection) {
+		flushIfDirty();
+		return dbUtils.count(clazz, selection);
+	}
+
+	public <T extends Serializable> boolean exists(Class<T> clazz, DBSelection<T> selection) {
+		flushIfDirty();
+		return dbUtils.exists(clazz, selection);
+	}
+
+	public <T extends Serializable> List<T> search(Class<T> clazz, String query, int limit) {
+		flushIfDirty();
+		return dbUtils.search(clazz, query, limit);
+	}
+
+	public <T extends Serializable> Number sum(Class<T> clazz, String column, DBSelection<T> selection) {
+		flushIfDirty();
+		return dbUtils.aggregate(clazz, "SUM", column, selection);
+	}
+
+	public <T extends Serializable> Number min(Class<T> clazz, String column, DBSelection<T> selection) {
+		flushIfDirty();
+		return dbUtils.aggregate(clazz, "MIN", column, selection);
+	}
+
+	public <T extends Serializable> Number max(Class<T> clazz, String column, DBSelection<T> selection) {
+		flushIfDirty();
+		return dbUtils.aggregate(clazz, "MAX", column, selection);
+	}
+
+	public <T extends Serializable> Map<String, Long> groupBy(Class<T> clazz, String column, DBSelection<T> selection) {
+		flushIfDirty();
+		return dbUtils.groupBy(clazz, column, selection);
+	}
+
+	public void setIdentityMapSize(int maxSize) {
+		dbUtils.setIdentityMapSize(maxSize);
+	}
+
+	public IdentityMap getIdentityMap() {
+		return dbUtils.getIdentityMap();
+	}
+
+	public void setResultCacheSize(int maxCount, long maxBytes) {
+		dbUtils.setResultCacheSize(maxCount, maxBytes);
+	}
+
+	public ResultCache getResultCache() {
+		return dbUtils.getResultCache();
+	}
+
+	public void register(Class<?>... classes) {
+		for (Class<?> clazz : classes) {
+			if (!Serializable.class.isAssignableFrom(clazz)) {
+				throw new IllegalArgumentException("XDBHelper register " + clazz.getName() + " isn't Serializable");
+			}
+			dbUtils.checkTable(clazz.asSubclass(Serializable.class));
+		}
+	}
+
+	public <T extends Serializable> MigrationPlan planMigration(Class<T> clazz) {
+		return dbUtils.getMigrationPlan(clazz);
+	}
+
+	public <T extends Serializable> int importJson(Class<T> clazz, Reader reader) {
+		flushIfDirty();
+		return dbUtils.importJson(clazz, reader);
+	}
+
+	public <T extends Serializable> long export(Class<T> clazz, OutputStream out, ExportFormat format) {
+		flushIfDirty();
+		return dbUtils.export(clazz, out, format);
+	}
+
+	public <T extends Serializable> int importSnapshot(Class<T> clazz, InputStream in, ExportFormat format) {
+		flushIfDirty();
+		return dbUtils.importSnapshot(clazz, in, format);
+	}
+
+	public <T extends Serializable> void saveLater(T bean) {
+		if (writeBuffer == null) {
+			dbUtils.save(bean);
+		} else {
+			writeBuffer.add(bean);
+		}
+	}
+
+	public void flush() {
+		flushIfDirty();
+	}
+
 	public synchronized void close() {
+		if (writeBuffer != null) {
+			writeBuffer.close();
+		}
+		DBUtils.destroy(dbName);
 		if (db != null) {
 			db.close();
 		}
@@ -0,0 +1,476 @@
+/**
+ * Copyright (C) 2014 Luki(liulongke@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lokiy.x.db.util;
+
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.lokiy.x.XLog;
+import com.lokiy.x.db.EntityMapper;
+import com.lokiy.x.db.EntityMapper.Column;
+import com.lokiy.x.db.ExportFormat;
+import com.lokiy.x.db.Table;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Serializable;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Streams the rows of a table to and from the formats of {@link ExportFormat}. The rows are read in pages of ROWID
+ * and written in batches of transactions, so the memory doesn't grow with the table. A page sees the rows committed
+ * before it's read, the export isn't a snapshot of one moment while the table is being written.
+ *
+ * @author Luki
+ */
+/*public*/ class DBSnapshot {
+
+	private static final String TAG = DBSnapshot.class.getSimpleName();
+	/** "XDBS" */
+	private static final int MAGIC = 0x58444253;
+	private static final int VERSION = 1;
+	private static final int PAGE_SIZE = 1000;
+	private static final int BATCH_SIZE = 500;
+	private static final String CHARSET = "UTF-8";
+
+	private static final byte ROW_END = 0;
+	private static final byte ROW = 1;
+	private static final byte VALUE_NULL = 0;
+	private static final byte VALUE_INTEGER = 1;
+	private static final byte VALUE_REAL = 2;
+	private static final byte VALUE_TEXT = 3;
+	private static final byte VALUE_BLOB = 4;
+
+	/**
+	 * reads a row of the snapshot, which is aligned to the restored columns.
+	 */
+	private interface RowReader {
+		boolean read(Object[] row) throws IOException;
+	}
+
+	/**
+	 * only the value columns are written, a snapshot of the relation columns and the link tables would lose the
+	 * relations silently.
+	 *
+	 * @param table table
+	 * @throws IllegalArgumentException if the table has relation columns.
+	 */
+	static <T extends Serializable> void checkSupported(Table<T> table) {
+		if (table.mapper.otherColumns.length > 0) {
+			throw new IllegalArgumentException(table.tableClass.getName() + " has relation columns, which can't be in a snapshot.");
+		}
+	}
+
+	/**
+	 * write the rows of the table to the stream, the stream isn't closed.
+	 *
+	 * @return the number of rows written
+	 */
+	static <T extends Serializable> long export(SQLiteDatabase db, Table<T> table, OutputStream out, ExportFormat format) throws Exception {
+		Column[] valueColumns = table.mapper.valueColumns;
+		String[] affinities = new String[valueColumns.length + 2];
+		StringBuilder sql = new StringBuilder("SELECT `" + DBUtils.PRIMARY_KEY_COLUMN + "`,`" + DBUtils.TIME_COLUMN + "`");
+		affinities[0] = affinities[1] = EntityMapper.AFFINITY_INTEGER;
+		for (int i = 0; i < valueColumns.length; i++) {
+			sql.append(",`").append(valueColumns[i].name).append("`");
+			affinities[i + 2] = valueColumns[i].affinity;
+		}
+		sql.append(" FROM ").append(table.tableName).append(" WHERE ").append(DBUtils.PRIMARY_KEY_COLUMN).append(" > ? ORDER BY ")
+				.append(DBUtils.PRIMARY_KEY_COLUMN).append(" LIMIT ").append(PAGE_SIZE);
+		Writer writer = null;
+		JsonWriter jsonWriter = null;
+		DataOutputStream dataOut = null;
+		if (format == ExportFormat.BINARY) {
+			dataOut = new DataOutputStream(new BufferedOutputStream(out));
+			dataOut.writeInt(MAGIC);
+			dataOut.writeByte(VERSION);
+			dataOut.writeUTF(table.tableName);
+			dataOut.writeInt(affinities.length);
+			dataOut.writeUTF(DBUtils.PRIMARY_KEY_COLUMN);
+			dataOut.writeUTF(DBUtils.TIME_COLUMN);
+			for (Column column : valueColumns) {
+				dataOut.writeUTF(column.name);
+			}
+		} else {
+			writer = new BufferedWriter(new OutputStreamWriter(out, CHARSET));
+			jsonWriter = new JsonWriter(writer);
+			jsonWriter.setLenient(true);// one top-level value per line.
+		}
+		long count = 0;
+		long lastID = Long.MIN_VALUE;
+		int rows;
+		do {
+			rows = 0;
+			Cursor c = db.rawQuery(sql.toString(), new String[]{String.valueOf(lastID)});
+			try {
+				while (c.moveToNext()) {
+					rows++;
+					lastID = c.getLong(0);
+					if (dataOut != null) {
+						dataOut.writeByte(ROW);
+						for (int i = 0; i < affinities.length; i++) {
+							writeValue(dataOut, c, i, affinities[i]);
+						}
+					} else {
+						writeJson(jsonWriter, c, valueColumns);
+						writer.write('\n');
+					}
+				}
+			} finally {
+				c.close();
+			}
+			count += rows;
+		} while (rows == PAGE_SIZE);
+		if (dataOut != null) {
+			dataOut.writeByte(ROW_END);
+			dataOut.flush();
+		} else {
+			jsonWriter.flush();
+			writer.flush();
+		}
+		XLog.v(TAG, "export %s %d rows", table.tableName, count);
+		return count;
+	}
+
+	private static void writeJson(JsonWriter writer, Cursor c, Column[] valueColumns) throws Exception {
+		writer.beginObject();
+		writer.name(DBUtils.PRIMARY_KEY_COLUMN).value(c.getLong(0));
+		writer.name(DBUtils.TIME_COLUMN);
+		if (c.isNull(1)) {
+			writer.nullValue();
+		} else {
+			writer.value(c.getLong(1));
+		}
+		for (int i = 0; i < valueColumns.length; i++) {
+			Column column = valueColumns[i];
+			int index = i + 2;
+			writer.name(column.name);
+			if (c.isNull(index)) {
+				writer.nullValue();
+				continue;
+			}
+			if (column.encrypt) {
+				Object value = EntityMapper.parse(column.type, EntityMapper.readEncrypted(c, index, column.name));
+				if (value == null) {
+					writer.nullValue();
+				} else if (value instanceof Boolean) {
+					writer.value((Boolean) value);
+				} else if (value instanceof Number) {
+					writer.value((Number) value);
+				} else {
+					writer.value(value.toString());
+				}
+				continue;
+			}
+			switch (column.type) {
+				case EntityMapper.TYPE_LONG:
+				case EntityMapper.TYPE_INT:
+				case EntityMapper.TYPE_SHORT:
+					writer.value(c.getLong(index));
+					break;
+				case EntityMapper.TYPE_DOUBLE:
+				case EntityMapper.TYPE_FLOAT:
+					writer.value(c.getDouble(index));
+					break;
+				case EntityMapper.TYPE_BOOLEAN:
+					writer.value(c.getLong(index) != 0);
+					break;
+				case EntityMapper.TYPE_BLOB:
+				case EntityMapper.TYPE_BYTE_ARRAY:// the bytes are written as an array of numbers like Gson.
+					writer.beginArray();
+					for (byte b : c.getBlob(index)) {
+						writer.value(b);
+					}
+					writer.endArray();
+					break;
+				default:
+					writer.value(c.getString(index));
+					break;
+			}
+		}
+		writer.endObject();
+	}
+
+	/**
+	 * write the stored value with its type, which is resolved by the column affinity before API 11.
+	 */
+	private static void writeValue(DataOutputStream out, Cursor c, int index, String affinity) throws IOException {
+		int type;
+		if (c.isNull(index)) {
+			type = Cursor.FIELD_TYPE_NULL;
+		} else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+			type = c.getType(index);
+		} else if (EntityMapper.AFFINITY_INTEGER.equals(affinity)) {
+			type = Cursor.FIELD_TYPE_INTEGER;
+		} else if (EntityMapper.AFFINITY_REAL.equals(affinity)) {
+			type = Cursor.FIELD_TYPE_FLOAT;
+		} else if (EntityMapper.AFFINITY_BLOB.equals(affinity)) {
+			type = Cursor.FIELD_TYPE_BLOB;
+		} else {
+			type = Cursor.FIELD_TYPE_STRING;
+		}
+		switch (type) {
+			case Cursor.FIELD_TYPE_INTEGER:
+				out.writeByte(VALUE_INTEGER);
+				out.writeLong(c.getLong(index));
+				break;
+			case Cursor.FIELD_TYPE_FLOAT:
+				out.writeByte(VALUE_REAL);
+				out.writeDouble(c.getDouble(index));
+				break;
+			case Cursor.FIELD_TYPE_STRING:
+				writeBytes(out, VALUE_TEXT, c.getString(index).getBytes(CHARSET));
+				break;
+			case Cursor.FIELD_TYPE_BLOB:
+				writeBytes(out, VALUE_BLOB, c.getBlob(index));
+				break;
+			default:
+				out.writeByte(VALUE_NULL);
+				break;
+		}
+	}
+
+	private static void writeBytes(DataOutputStream out, byte type, byte[] bytes) throws IOException {
+		out.writeByte(type);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * restore the rows of the stream. The row with the same primary key is updated, and the others are inserted with
+	 * their primary keys. The columns which the table doesn't contain are ignored.
+	 *
+	 * @return the number of rows restored
+	 */
+	static <T extends Serializable> int restore(SQLiteDatabase db, Table<T> table, InputStream in, ExportFormat format) throws Exception {
+		final Column[] valueColumns = table.mapper.valueColumns;
+		if (format == ExportFormat.JSON_LINES) {
+			final JsonReader reader = new JsonReader(new BufferedReader(new InputStreamReader(in, CHARSET)));
+			reader.setLenient(true);// one top-level value per line.
+			final Map<String, Integer> names = new HashMap<>();
+			String[] columns = new String[valueColumns.length + 2];
+			Column[] bindColumns = new Column[columns.length];
+			columns[0] = DBUtils.PRIMARY_KEY_COLUMN;
+			columns[1] = DBUtils.TIME_COLUMN;
+			names.put(columns[0], 0);
+			names.put(columns[1], 1);
+			for (int i = 0; i < valueColumns.length; i++) {
+				columns[i + 2] = valueColumns[i].name;
+				bindColumns[i + 2] = valueColumns[i];
+				names.put(valueColumns[i].name, i + 2);
+			}
+			return restoreRows(db, table, columns, bindColumns, new RowReader() {
+				@Override
+				public boolean read(Object[] row) throws IOException {
+					if (reader.peek() == JsonToken.END_DOCUMENT) {
+						return false;
+					}
+					for (int i = 0; i < row.length; i++) {
+						row[i] = null;
+					}
+					reader.beginObject();
+					while (reader.hasNext()) {
+						Integer index = names.get(reader.nextName());
+						if (index == null) {
+							reader.skipValue();
+						} else if (reader.peek() == JsonToken.NULL) {
+							reader.nextNull();
+						} else if (index < 2) {
+							row[index] = reader.nextLong();
+						} else {
+							row[index] = DBUtils.readJsonValue(reader, valueColumns[index - 2]);
+						}
+					}
+					reader.endObject();
+					return true;
+				}
+			});
+		}
+		final DataInputStream dataIn = new DataInputStream(new BufferedInputStream(in));
+		if (dataIn.readInt() != MAGIC || dataIn.readByte() != VERSION) {
+			throw new IOException("not a snapshot of XDBHelper");
+		}
+		String tableName = dataIn.readUTF();
+		if (!table.tableName.equals(tableName)) {
+			XLog.w(TAG, "restore the snapshot of %s to %s", tableName, table.tableName);
+		}
+		Set<String> tableColumns = new HashSet<>();
+		tableColumns.add(DBUtils.PRIMARY_KEY_COLUMN);
+		tableColumns.add(DBUtils.TIME_COLUMN);
+		for (Column column : valueColumns) {
+			tableColumns.add(column.name);
+		}
+		int count = dataIn.readInt();
+		final int[] positions = new int[count];
+		List<String> columns = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			String name = dataIn.readUTF();
+			positions[i] = tableColumns.contains(name) ? columns.size() : -1;
+			if (positions[i] >= 0) {
+				columns.add(name);
+			}
+		}
+		return restoreRows(db, table, columns.toArray(new String[columns.size()]), new Column[columns.size()], new RowReader() {
+			@Override
+			public boolean read(Object[] row) throws IOException {
+				if (dataIn.readByte() != ROW) {
+					return false;
+				}
+				for (int position : positions) {
+					Object value = readValue(dataIn);
+					if (position >= 0) {
+						row[position] = value;
+					}
+				}
+				return true;
+			}
+		});
+	}
+
+	private static Object readValue(DataInputStream in) throws IOException {
+		byte type = in.readByte();
+		switch (type) {
+			case VALUE_NULL:
+				return null;
+			case VALUE_INTEGER:
+				return in.readLong();
+			case VALUE_REAL:
+				return in.readDouble();
+			case VALUE_TEXT:
+			case VALUE_BLOB:
+				byte[] bytes = new byte[in.readInt()];
+				in.readFully(bytes);
+				return type == VALUE_TEXT ? new String(bytes, CHARSET) : bytes;
+			default:
+				throw new IOException("unknown value type " + type);
+		}
+	}
+
+	/**
+	 * update the row by the primary key or insert it, and commit every {@link #BATCH_SIZE} rows.
+	 *
+	 * @param columns     the restored columns, in the order of the row
+	 * @param bindColumns the columns whose values are bound by {@link EntityMapper#bindValue}, null means the stored
+	 *                    value which is bound as it is.
+	 */
+	private static <T extends Serializable> int restoreRows(SQLiteDatabase db, Table<T> table, String[] columns, Column[] bindColumns,
+			RowReader reader) throws Exception {
+		int idIndex = -1;
+		StringBuilder insertSQL = new StringBuilder("INSERT INTO ").append(table.tableName).append("(");
+		StringBuilder updateSQL = new StringBuilder("UPDATE ").append(table.tableName).append(" SET ");
+		for (int i = 0; i < columns.length; i++) {
+			insertSQL.append(i == 0 ? "`" : ",`").append(columns[i]).append("`");
+			if (DBUtils.PRIMARY_KEY_COLUMN.equals(columns[i])) {
+				idIndex = i;
+			} else {
+				updateSQL.append("`").append(columns[i]).append("`=?,");
+			}
+		}
+		insertSQL.append(") VALUES(");
+		for (int i = 0; i < columns.length; i++) {
+			insertSQL.append(i == 0 ? "?" : ",?");
+		}
+		insertSQL.append(")");
+		updateSQL.setLength(updateSQL.length() - 1);
+		updateSQL.append(" WHERE ").append(DBUtils.PRIMARY_KEY_COLUMN).append("=?");
+		boolean isUpdate = idIndex >= 0 && columns.length > 1 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+		SQLiteStatement insert = db.compileStatement(insertSQL.toString());
+		SQLiteStatement update = isUpdate ? db.compileStatement(updateSQL.toString()) : null;
+		Object[] row = new Object[columns.length];
+		int count = 0;
+		int batch = 0;
+		db.beginTransaction();
+		try {
+			while (reader.read(row)) {
+				boolean isSaved = false;
+				try {
+					if (update != null && row[idIndex] != null) {
+						update.clearBindings();
+						int index = 1;
+						for (int i = 0; i < columns.length; i++) {
+							if (i != idIndex) {
+								bind(update, index++, bindColumns[i], row[i]);
+							}
+						}
+						bind(update, index, null, row[idIndex]);
+						isSaved = update.executeUpdateDelete() > 0;
+					}
+					if (!isSaved) {
+						insert.clearBindings();
+						for (int i = 0; i < columns.length; i++) {
+							bind(insert, i + 1, bindColumns[i], row[i]);
+						}
+						isSaved = insert.executeInsert() != -1;
+					}
+				} catch (SQLException e) {
+					XLog.w(TAG, "restore %s exception : %s", table.tableName, e.toString());
+				}
+				if (isSaved && ++batch >= BATCH_SIZE) {
+					db.setTransactionSuccessful();
+					db.endTransaction();
+					count += batch;
+					batch = 0;
+					db.beginTransaction();
+				}
+			}
+			db.setTransactionSuccessful();
+			count += batch;
+		} finally {
+			db.endTransaction();
+			insert.close();
+			if (update != null) update.close();
+		}
+		XLog.v(TAG, "restore %s %d rows", table.tableName, count);
+		return count;
+	}
+
+	private static void bind(SQLiteStatement statement, int index, Column column, Object value) throws Exception {
+		if (column != null) {
+			EntityMapper.bindValue(statement, index, column, value);
+		} else if (value == null) {
+			statement.bindNull(index);
+		} else if (value instanceof Long) {
+			statement.bindLong(index, (Long) value);
+		} else if (value instanceof Double) {
+			statement.bindDouble(index, (Double) value);
+		} else if (value instanceof byte[]) {
+			statement.bindBlob(index, (byte[]) value);
+		} else {
+			statement.bindString(index, value.toString());
+		}
+	}
+}
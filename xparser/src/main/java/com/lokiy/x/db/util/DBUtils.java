@@ -17,51 +17,137 @@ package com.lokiy.x.db.util;
 
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
 import android.text.TextUtils;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.lokiy.x.db.AESColumnCipher;
+import com.lokiy.x.db.ColumnCipher;
+import com.lokiy.x.db.CursorList;
 import com.lokiy.x.db.DBHelper;
 import com.lokiy.x.XLog;
 import com.lokiy.x.db.DBSelection;
+import com.lokiy.x.db.EntityMapper;
+import com.lokiy.x.db.EntityMapper.Column;
+import com.lokiy.x.db.EntityMapper.TableIndex;
+import com.lokiy.x.db.ExportFormat;
+import com.lokiy.x.db.IdentityMap;
+import com.lokiy.x.db.MigrationListener;
+import com.lokiy.x.db.MigrationPlan;
+import com.lokiy.x.db.ResultCache;
 import com.lokiy.x.db.Table;
 import com.lokiy.x.db.TableInfo;
-import com.lokiy.x.db.annotation.Encrypt;
-import com.lokiy.x.db.annotation.Expose;
-import com.lokiy.x.db.annotation.NotNull;
-import com.lokiy.x.db.annotation.OrderBy;
-import com.lokiy.x.db.annotation.OrderBy.SortAs;
-import com.lokiy.x.db.annotation.Rename;
 import com.lokiy.x.db.annotation.TableVersion;
-import com.lokiy.x.db.annotation.Unique;
-import com.lokiy.x.util.DESUtil;
-import com.lokiy.x.util.ReflectUtils;
+import com.lokiy.x.util.MD5;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.io.Serializable;
 import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
-import java.lang.reflect.ParameterizedType;
-import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class DBUtils {
 
 	private final String TAG = "XDBHelper";
 	private static final String ROW_ID_SPLIT = ",";
+	/** the columns of the link tables. */
+	private static final String LINK_PARENT_COLUMN = "parent_id";
+	private static final String LINK_CHILD_COLUMN = "child_id";
+	private static final String LINK_FIELD_COLUMN = "field";
+	private static final String LINK_POSITION_COLUMN = "position";
+	private static final String UNIQUE_KEY_SPLIT = "\u0001";
+	private static final int CHUNK_SIZE = 200;
+	/** SQLITE_MAX_VARIABLE_NUMBER */
+	private static final int MAX_VARIABLE_NUMBER = 999;
+	/** Build.VERSION_CODES.R, the bundled SQLite supports INSERT ... ON CONFLICT DO UPDATE since it. */
+	private static final int UPSERT_SDK_INT = 30;
+	private static final int QUERY_STATEMENT_CACHE_SIZE = 20;
+	private static final int IMPORT_BATCH_SIZE = 500;
+	/** Build.VERSION_CODES.R, the bundled SQLite supports ALTER TABLE ... RENAME COLUMN since it. */
+	private static final int RENAME_COLUMN_SDK_INT = 30;
+	public static final int MIGRATION_CHUNK_SIZE = 5000;
+	/** the prefix of the new table of the rebuilding, which is kept to resume the copying if it's interrupted. */
+	private static final String REBUILD_TABLE_PREFIX = "x_new_";
+	/** the prefix of the shadow full-text table of the {@link com.lokiy.x.db.annotation.FullText} columns. */
+	public static final String FULL_TEXT_TABLE_PREFIX = "x_fts_";
+	/** Build.VERSION_CODES.LOLLIPOP, the bundled SQLite supports the unicode61 tokenizer since it. */
+	private static final int UNICODE61_SDK_INT = 21;
+	/** the shorter words of the full-text query are matched as whole words, a shorter prefix matches too many terms. */
+	private static final int MIN_PREFIX_LENGTH = 2;
+	/** the max count of the matched rows which are ranked by a full-text search, unless the limit is larger. */
+	private static final int SEARCH_CANDIDATES = 500;
 	@SuppressWarnings("unused")
 	public static final String TABLE_INFO = "table_info";
 	public static final String PRIMARY_KEY_COLUMN = "_id";
 	public static final String TIME_COLUMN = "_modify_time";
 
-	public static Map<String, Table> tableMap = new HashMap<>();
-	private static final Map<String, DBUtils> instanceMap = new HashMap<>();
+	/** the registered tables, dbName_tableName => table. The tables are published once they are {@link Table#ready}. */
+	public static Map<String, Table> tableMap = new ConcurrentHashMap<>();
+	private static final ConcurrentHashMap<String, DBUtils> instanceMap = new ConcurrentHashMap<>();
+	/** the codec of the encrypted columns of all the databases, the generated mappers use it statically. */
+	private static volatile ColumnCipher sColumnCipher;
+	/** guards the creating and the migrating of the tables, the registered tables are read without it. */
+	private final Object schemaLock = new Object();
 	private SQLiteDatabase db;
 	private String dbName;
 	private DBHelper helper;
+	/** the compiled statements, sql => statement. */
+	private final Map<String, SQLiteStatement> statementMap = new HashMap<>();
+	/** the first-level cache of the beans, null if it's disabled. */
+	private volatile IdentityMap identityMap;
+	/** the cache of the query results, null if it's disabled. */
+	private volatile ResultCache resultCache;
+	/** the tables written in the transaction of the current thread, they're notified after it ends. */
+	private final ThreadLocal<Set<String>> changedTables = new ThreadLocal<Set<String>>() {
+
+		@Override
+		protected Set<String> initialValue() {
+			return new LinkedHashSet<>();
+		}
+	};
+	private volatile int migrationChunkSize = MIGRATION_CHUNK_SIZE;
+	private volatile MigrationListener migrationListener;
+	/** the rows of {@link TableInfo} by the table names, guarded by the schema lock. */
+	private Map<String, TableInfo> tableInfoMap;
+	/** the compiled statements of the scalar queries, in access order. The eldest one is closed when it's full. */
+	private final Map<String, SQLiteStatement> queryStatementMap = new LinkedHashMap<String, SQLiteStatement>(QUERY_STATEMENT_CACHE_SIZE, 0.75f, true) {
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, SQLiteStatement> eldest) {
+			if (size() > QUERY_STATEMENT_CACHE_SIZE) {
+				eldest.getValue().close();
+				return true;
+			}
+			return false;
+		}
+	};
 
 	private DBUtils(SQLiteDatabase db, String dbName, DBHelper helper) {
 		this.db = db;
@@ -72,11 +158,64 @@ public class DBUtils {
 	public static DBUtils getInstance(SQLiteDatabase db, String dbName, DBHelper helper) {
 		DBUtils dbUtils;
 		if ((dbUtils = instanceMap.get(dbName)) == null) {
-			dbUtils = new DBUtils(db, dbName, helper);
-			instanceMap.put(dbName, dbUtils);
+			DBUtils created = new DBUtils(db, dbName, helper);
+			dbUtils = instanceMap.putIfAbsent(dbName, created);
+			if (dbUtils == null) {
+				dbUtils = created;
+			}
 		}
 		return dbUtils;
 	}
+
+	/**
+	 * set the codec of the {@link com.lokiy.x.db.annotation.Encrypt} columns of all the databases. The values written
+	 * by the previous codec can't be read after it's changed, except the legacy DES values.
+	 *
+	 * @param cipher cipher, null means {@link AESColumnCipher#createDefault()}
+	 */
+	public static void setColumnCipher(ColumnCipher cipher) {
+		sColumnCipher = cipher;
+	}
+
+	/**
+	 * @return the codec of the {@link com.lokiy.x.db.annotation.Encrypt} columns.
+	 */
+	public static ColumnCipher getColumnCipher() {
+		ColumnCipher cipher = sColumnCipher;
+		if (cipher == null) {
+			synchronized (DBUtils.class) {
+				if ((cipher = sColumnCipher) == null) {
+					sColumnCipher = cipher = AESColumnCipher.createDefault();
+				}
+			}
+		}
+		return cipher;
+	}
+
+	/**
+	 * release the instance and the compiled statements of the database, it should be called before the database is
+	 * closed.
+	 *
+	 * @param dbName database name
+	 */
+	public static void destroy(String dbName) {
+		DBUtils dbUtils = instanceMap.remove(dbName);
+		if (dbUtils == null) {
+			return;
+		}
+		synchronized (dbUtils.statementMap) {
+			for (SQLiteStatement statement : dbUtils.statementMap.values()) {
+				statement.close();
+			}
+			dbUtils.statementMap.clear();
+		}
+		synchronized (dbUtils.queryStatementMap) {
+			for (SQLiteStatement statement : dbUtils.queryStatementMap.values()) {
+				statement.close();
+			}
+			dbUtils.queryStatementMap.clear();
+		}
+	}
 	/**
 	 * Convenience method for inserting a row into the database.
 	 *
@@ -108,6 +247,10 @@ public class DBUtils {
 					putRelationTableDataContentValues(t, table, values);
 				}
 				rowID = db.insert(tableName, null, values);
+				if (rowID > 0 && table.otherTypeField.size() > 0) {
+					saveLinks(table, t, rowID);
+				}
+				notifyTableChanged(tableName);
 				XLog.v(TAG, "operation : %s TABLE %s success. rowID = %s and the bean = %s ", operation, tableName, rowID, t.toString());
 			}
 		} catch (Exception e) {
@@ -142,12 +285,14 @@ public class DBUtils {
 				// update the relation table' data( delete all mapping data and the save the relation data's rowID to
 				// the ContentValues).
 				if (table.otherTypeField.size() > 0) {
-					deleteRelationTableData(clazz, getSelection(t), table);
+					deleteRelationTableData(clazz, getSelection(t), table, false);
 					putRelationTableDataContentValues(t, table, values);
+					saveLinks(table, t, _id);
 				}
 
 				String[] selectionArgs = new String[]{String.valueOf(_id)};
 				count = db.update(tableName, values, PRIMARY_KEY_COLUMN + "=?", selectionArgs);
+				notifyTableChanged(tableName);
 				XLog.v(TAG, "operation : %s TABLE %s success. the number of rows affected = %s and the bean = %s ", operation, tableName, count, t.toString());
 			} else {// not exist, insert?
 //				insert(t);
@@ -172,6 +317,14 @@ public class DBUtils {
 		Class<T> clazz = (Class<T>) bean.getClass();
 		Table<T> table = checkTable(clazz);
 		String tableName = table.tableName;
+		if (table.hasUniqueIndex && isBulkSupported(table) && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+			try {
+				return upsert(table, bean);
+			} catch (Exception e) {
+				XLog.w(TAG, "operation : %s TABLE %s  exception : %s", "UPSERT", tableName, e.toString());
+				return 0;
+			}
+		}
 		long _id = getPrimaryKeyValue(clazz, table.uniqueSelection.fillIn(bean));
 		String operation = null;
 		try {
@@ -182,8 +335,9 @@ public class DBUtils {
 				// update the relation table' data( delete all mapping data and the save the relation data's rowID
 				// to the ContentValues).
 				if (table.otherTypeField.size() > 0) {
-					deleteRelationTableData(clazz, getSelection(bean), table);
+					deleteRelationTableData(clazz, getSelection(bean), table, false);
 					putRelationTableDataContentValues(bean, table, values);
+					saveLinks(table, bean, _id);
 				}
 
 				String[] selectionArgs = new String[]{String.valueOf(_id)};
@@ -196,11 +350,16 @@ public class DBUtils {
 					putRelationTableDataContentValues(bean, table, values);
 				}
 				_id = db.insert(tableName, null, values);
+				if (_id > 0 && table.otherTypeField.size() > 0) {
+					saveLinks(table, bean, _id);
+				}
 			}
 			XLog.v(TAG, "operation : %s TABLE %s success. PRIMARYKEY or rowID = %s and the bean = %s ", operation, tableName, _id, bean.toString());
 		} catch (Exception e) {
 			XLog.w(TAG, "operation : %s TABLE %s  exception : %s", operation, tableName, e.toString());
 			return 0;
+		} finally {
+			notifyTableChanged(tableName);
 		}
 		return 1;
 	}
@@ -213,264 +372,1809 @@ public class DBUtils {
 	 */
 	public <T extends Serializable> int save(List<T> list) {
 		int count = 0;
+		if (list == null || list.isEmpty()) {
+			return count;
+		}
 		long l = System.currentTimeMillis();
-		for (T bean : list) {
-			if (bean == null) {
-				continue;
+		Map<Class<T>, List<T>> groups = groupByClass(list);
+		for (Class<T> clazz : groups.keySet()) {
+			checkTables(clazz);
+		}
+		db.beginTransaction();
+		try {
+			for (Map.Entry<Class<T>, List<T>> entry : groups.entrySet()) {
+				count += saveAll(checkTable(entry.getKey()), entry.getValue());
+			}
+			db.setTransactionSuccessful();
+		} catch (Exception e) {
+			XLog.w(TAG, e);
+			count = 0;
+		} finally {
+			endTransaction();
+			for (Class<T> clazz : groups.keySet()) {
+				notifyTableChanged(clazz.getSimpleName());
 			}
-			count += save(bean);
 		}
 		XLog.i(TAG, "list size is %d, success %d, cost %d", list.size(), count, System.currentTimeMillis() - l);
 		return count;
 	}
 
 	/**
-	 * Convenience method for deleting rows in the database.
+	 * save the beans of one table in chunks. The existing primary keys of a whole chunk are resolved by one query, and
+	 * the INSERT and UPDATE statements are compiled once. It should be called in a transaction.
 	 *
-	 * @param list data list for deleting.
-	 * @return the number of rows affected if a whereClause is passed in, 0 otherwise. To remove all rows and get a
-	 * count pass "1" as the whereClause.
+	 * @param table table
+	 * @param list  beans
+	 * @return the number of rows affected
 	 */
-	public <T extends Serializable> int delete(List<T> list) {
+	private <T extends Serializable> int saveAll(Table<T> table, List<T> list) {
 		int count = 0;
-		if (list == null || list.isEmpty()) {
+		EntityMapper<T> mapper = table.mapper;
+		if (!isBulkSupported(table)) {
+			for (T bean : list) {
+				count += save(bean);
+			}
 			return count;
 		}
-		for (T bean : list) {
-			if (bean == null)
-				continue;
-			count += delete(bean);
+		Column[] uniqueColumns = mapper.uniqueColumns;
+		int chunkSize = uniqueColumns.length == 0 ? CHUNK_SIZE : Math.max(1, Math.min(CHUNK_SIZE, MAX_VARIABLE_NUMBER / uniqueColumns.length));
+		int timeIndex = mapper.valueColumns.length + 1;
+		if (table.hasUniqueIndex && Build.VERSION.SDK_INT >= UPSERT_SDK_INT) {// the unique index resolves the conflicts.
+			SQLiteStatement upsert = db.compileStatement(getUpsertSQL(table));
+			try {
+				for (T bean : list) {
+					try {
+						upsert.clearBindings();
+						mapper.bind(bean, upsert, 1);
+						upsert.bindLong(timeIndex, System.currentTimeMillis());
+						upsert.executeInsert();
+						count++;
+					} catch (Exception e) {
+						XLog.w(TAG, "operation : %s TABLE %s  exception : %s", "UPSERT", table.tableName, e.toString());
+					}
+				}
+			} finally {
+				upsert.close();
+			}
+			return count;
+		}
+		SQLiteStatement insert = db.compileStatement(getInsertSQL(table));
+		SQLiteStatement update = uniqueColumns.length == 0 ? null : db.compileStatement(getUpdateSQL(table));
+		try {
+			for (int start = 0; start < list.size(); start += chunkSize) {
+				long l = System.currentTimeMillis();
+				List<T> chunk = list.subList(start, Math.min(start + chunkSize, list.size()));
+				Map<String, Long> ids = getPrimaryKeyValues(table, chunk);
+				int success = 0;
+				for (T bean : chunk) {
+					String key = getUniqueKey(uniqueColumns, bean);
+					Long _id = key == null ? null : ids.get(key);
+					try {
+						if (_id != null && update != null) {
+							update.clearBindings();
+							mapper.bind(bean, update, 1);
+							update.bindLong(timeIndex, System.currentTimeMillis());
+							update.bindLong(timeIndex + 1, _id);
+							update.execute();
+						} else {
+							insert.clearBindings();
+							mapper.bind(bean, insert, 1);
+							insert.bindLong(timeIndex, System.currentTimeMillis());
+							long rowID = insert.executeInsert();
+							if (key != null && rowID > 0) {
+								ids.put(key, rowID);
+							}
+						}
+						success++;
+					} catch (Exception e) {
+						XLog.w(TAG, "operation : %s TABLE %s  exception : %s", _id != null ? "UPDATE" : "INSERT INTO", table.tableName, e.toString());
+					}
+				}
+				count += success;
+				XLog.v(TAG, "save chunk [%d, %d) TABLE %s, success %d, cost %d", start, start + chunk.size(), table.tableName, success,
+						System.currentTimeMillis() - l);
+			}
+		} catch (Exception e) {
+			XLog.w(TAG, e);
+		} finally {
+			insert.close();
+			if (update != null) {
+				update.close();
+			}
 		}
 		return count;
 	}
 
 	/**
-	 * Convenience method for deleting rows in the database.
+	 * save the bean by the unique index with the compiled statements. On API 30+ it's one INSERT ... ON CONFLICT DO
+	 * UPDATE, otherwise an UPDATE by the unique columns and an INSERT if nothing is updated, in a transaction.
 	 *
-	 * @param t data for deleting.
-	 * @return the number of rows affected if a whereClause is passed in, 0 otherwise. To remove all rows and get a
-	 * count pass "1" as the whereClause.
+	 * @param table table which has the unique index
+	 * @param bean  bean
+	 * @return the number of rows affected
 	 */
-	@SuppressWarnings("unchecked")
-	public <T extends Serializable> int delete(T t) {
-		Table<T> table = (Table<T>) checkTable(t.getClass());
-		return deleteBySelection(table.tableClass, getSelection(t));
+	private <T extends Serializable> int upsert(Table<T> table, T bean) throws Exception {
+		EntityMapper<T> mapper = table.mapper;
+		int timeIndex = mapper.valueColumns.length + 1;
+		String operation;
+		if (Build.VERSION.SDK_INT >= UPSERT_SDK_INT) {
+			operation = "UPSERT";
+			SQLiteStatement upsert = getStatement(getUpsertSQL(table));
+			synchronized (upsert) {
+				upsert.clearBindings();
+				mapper.bind(bean, upsert, 1);
+				upsert.bindLong(timeIndex, System.currentTimeMillis());
+				upsert.executeInsert();
+			}
+		} else {
+			SQLiteStatement update = getStatement(getUniqueUpdateSQL(table));
+			SQLiteStatement insert = getStatement(getInsertSQL(table));
+			// lock the statements before the transaction, so the lock order is same as the other threads.
+			synchronized (update) {
+				synchronized (insert) {
+					db.beginTransaction();
+					try {
+						update.clearBindings();
+						mapper.bind(bean, update, 1);
+						update.bindLong(timeIndex, System.currentTimeMillis());
+						Column[] uniqueColumns = mapper.uniqueColumns;
+						for (int i = 0; i < uniqueColumns.length; i++) {
+							Object value = uniqueColumns[i].get(bean);
+							if (value == null) {
+								update.bindNull(timeIndex + 1 + i);
+							} else {
+								update.bindString(timeIndex + 1 + i, toArg(value));
+							}
+						}
+						operation = "UPDATE";
+						if (update.executeUpdateDelete() == 0) {
+							operation = "INSERT INTO";
+							insert.clearBindings();
+							mapper.bind(bean, insert, 1);
+							insert.bindLong(timeIndex, System.currentTimeMillis());
+							insert.executeInsert();
+						}
+						db.setTransactionSuccessful();
+					} finally {
+						endTransaction();
+					}
+				}
+			}
+		}
+		notifyTableChanged(table.tableName);
+		XLog.v(TAG, "operation : %s TABLE %s success. the bean = %s ", operation, table.tableName, bean.toString());
+		return 1;
 	}
+
 	/**
-	 * Convenience method for deleting rows in the database.
-	 *
-	 * @param clazz data for deleting.
-	 * @return the number of rows affected if a whereClause is passed in, 0 otherwise. To remove all rows and get a
-	 * count pass "1" as the whereClause.
+	 * get the compiled statement of the sql, it's compiled at the first time. The statement should be used in
+	 * synchronized block of itself.
 	 */
-	public <T extends Serializable> int deleteBySelection(Class<T> clazz, DBSelection<T> selection) {
-		int count = 0;
-		String operation = "DELETE FROM ";
-		String tableName = clazz.getSimpleName();
-		try {
-			deleteRelationTableData(clazz, selection, null);
-			count += db.delete(tableName, selection.selection, selection.selectionArgs);
-			XLog.v(TAG, "operation : %s TABLE %s success.", operation, tableName);
-		} catch (Exception e) {
-			XLog.w(TAG, "operation : %s TABLE %s exception : %s", operation, tableName, e.toString());
+	private SQLiteStatement getStatement(String sql) {
+		synchronized (statementMap) {
+			SQLiteStatement statement = statementMap.get(sql);
+			if (statement == null) {
+				statement = db.compileStatement(sql);
+				statementMap.put(sql, statement);
+			}
+			return statement;
 		}
-		return count;
 	}
 
 	/**
-	 * find the data with bean.
+	 * save the JSON array of the beans, or a single bean, from the reader. The values are read token by token and bound
+	 * to a compiled statement without building the beans, and the rows are committed every
+	 * {@link #IMPORT_BATCH_SIZE} rows, so the memory doesn't grow with the JSON. The rows with the existing unique key
+	 * are updated. The JSON names are the field names or the {@link SerializedName} of the fields, and the missing
+	 * values are the default values of the bean like Gson. The tables which {@link #isBulkSupported(Table)} rejects are
+	 * parsed by Gson one bean at a time.
 	 *
-	 * @param bean which contains field' value. And that can auto consist of selection.
-	 * @return T
+	 * @param clazz  class
+	 * @param reader JSON
+	 * @return the number of rows saved, the rows of the failed batch are rolled back.
 	 */
-	@SuppressWarnings("unchecked")
-	public <T extends Serializable> T findByBean(T bean) {
-		DBSelection<T> selection = getSelection(bean);
-		Class<T> class1 = (Class<T>) bean.getClass();
-		return findBySelection(class1, selection);
+	public <T extends Serializable> int importJson(Class<T> clazz, Reader reader) {
+		Table<T> table = checkTables(clazz);
+		long l = System.currentTimeMillis();
+		JsonReader jsonReader = new JsonReader(reader);
+		int count = 0;
+		int batch = 0;
+		boolean isInTransaction = false;
+		SQLiteStatement insert = null;
+		SQLiteStatement update = null;
+		try {
+			boolean isArray = jsonReader.peek() == JsonToken.BEGIN_ARRAY;
+			if (isArray) {
+				jsonReader.beginArray();
+			}
+			EntityMapper<T> mapper = table.mapper;
+			Column[] valueColumns = mapper.valueColumns;
+			Map<String, Integer> names = null;
+			Object[] defaults = null;
+			Object[] values = null;
+			int[] uniqueIndexes = null;
+			int timeIndex = valueColumns.length + 1;
+			boolean isBulk = isBulkSupported(table);
+			if (isBulk) {
+				names = getJsonNames(valueColumns);
+				T template = mapper.newInstance();
+				defaults = new Object[valueColumns.length];
+				for (int i = 0; i < valueColumns.length; i++) {
+					defaults[i] = valueColumns[i].get(template);
+				}
+				values = new Object[valueColumns.length];
+				uniqueIndexes = new int[mapper.uniqueColumns.length];
+				for (int i = 0; i < uniqueIndexes.length; i++) {
+					uniqueIndexes[i] = Arrays.asList(valueColumns).indexOf(mapper.uniqueColumns[i]);
+				}
+				if (table.hasUniqueIndex && Build.VERSION.SDK_INT >= UPSERT_SDK_INT) {
+					insert = db.compileStatement(getUpsertSQL(table));
+				} else {
+					insert = db.compileStatement(getInsertSQL(table));
+					if (uniqueIndexes.length > 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+						update = db.compileStatement(getUniqueUpdateSQL(table));
+					}
+				}
+			}
+			Gson gson = isBulk ? null : new Gson();
+			boolean hasNext = true;
+			while (isArray ? jsonReader.hasNext() : hasNext) {
+				hasNext = false;
+				if (!isInTransaction) {
+					db.beginTransaction();
+					isInTransaction = true;
+				}
+				if (isBulk) {
+					System.arraycopy(defaults, 0, values, 0, values.length);
+					readJsonValues(jsonReader, valueColumns, names, values);
+					if (importRow(table, insert, update, values, uniqueIndexes, timeIndex)) {
+						batch++;
+					}
+				} else {
+					T bean = gson.fromJson(jsonReader, clazz);
+					if (bean != null && save(bean) > 0) {
+						batch++;
+					}
+				}
+				if (!isArray || batch >= IMPORT_BATCH_SIZE) {
+					db.setTransactionSuccessful();
+					endTransaction();
+					isInTransaction = false;
+					count += batch;
+					batch = 0;
+				}
+			}
+			if (isInTransaction) {
+				db.setTransactionSuccessful();
+				endTransaction();
+				isInTransaction = false;
+				count += batch;
+			}
+		} catch (Exception e) {
+			XLog.w(TAG, e);
+		} finally {
+			if (isInTransaction) {
+				endTransaction();
+			}
+			if (insert != null) insert.close();
+			if (update != null) update.close();
+			notifyTableChanged(table.tableName);
+		}
+		XLog.i(TAG, "import %s %d rows, cost %d", table.tableName, count, System.currentTimeMillis() - l);
+		return count;
 	}
 
 	/**
-	 * find the data with selection.
+	 * write the rows of the table to the stream in pages of ROWID, the stream isn't closed.
 	 *
-	 * @param clazz     table and bean.
-	 * @param selection A filter declaring which rows to return, formatted as an SQL WHERE clause (excluding the WHERE
-	 *                  itself). Passing null will return all rows for the given table.
-	 * @return clazz's instance
+	 * @param clazz  class
+	 * @param out    target
+	 * @param format format
+	 * @return the number of rows written, or -1 if an error occurred
 	 */
-	public <T extends Serializable> T findBySelection(Class<T> clazz, DBSelection<T> selection) {
-		List<T> list = selectBySelection(clazz, selection);
-		return list.size() > 0 ? list.get(0) : null;
+	public <T extends Serializable> long export(Class<T> clazz, OutputStream out, ExportFormat format) {
+		Table<T> table = checkTable(clazz);
+		DBSnapshot.checkSupported(table);
+		long l = System.currentTimeMillis();
+		try {
+			long count = DBSnapshot.export(db, table, out, format);
+			XLog.i(TAG, "export %s %d rows, cost %d", table.tableName, count, System.currentTimeMillis() - l);
+			return count;
+		} catch (Exception e) {
+			XLog.w(TAG, e);
+			return -1;
+		}
 	}
 
 	/**
-	 * find the data with bean.
+	 * restore the rows written by {@link #export(Class, OutputStream, ExportFormat)}, the rows are committed in
+	 * batches. The row with the same primary key is updated, and the others are inserted with their primary keys.
 	 *
-	 * @param bean which contains field' value. And that can auto consist of selection.
-	 * @return List
+	 * @param clazz  class
+	 * @param in     source
+	 * @param format format
+	 * @return the number of rows restored, or -1 if an error occurred, the rows of the failed batch are rolled back.
 	 */
-	@SuppressWarnings("unchecked")
-	public <T extends Serializable> List<T> selectByBean(T bean) {
-		DBSelection<T> selection = getSelection(bean);
-		Class<T> class1 = (Class<T>) bean.getClass();
-		return selectBySelection(class1, selection);
+	public <T extends Serializable> int importSnapshot(Class<T> clazz, InputStream in, ExportFormat format) {
+		Table<T> table = checkTable(clazz);
+		DBSnapshot.checkSupported(table);
+		long l = System.currentTimeMillis();
+		try {
+			int count = DBSnapshot.restore(db, table, in, format);
+			XLog.i(TAG, "import snapshot %s %d rows, cost %d", table.tableName, count, System.currentTimeMillis() - l);
+			return count;
+		} catch (Exception e) {
+			XLog.w(TAG, e);
+			return -1;
+		} finally {
+			notifyTableChanged(table.tableName);
+		}
 	}
 
 	/**
-	 * find the data with selection.
+	 * insert the row, or update the row with the same unique key. It should be called in a transaction.
 	 *
-	 * @param clazz     table and bean.
-	 * @param selection A filter declaring which rows to return, formatted as an SQL WHERE clause (excluding the WHERE
-	 *                  itself). Passing null will return all rows for the given table.
-	 * @return clazz's instance
+	 * @return true if the row is saved.
 	 */
-	public <T extends Serializable> List<T> selectBySelection(Class<T> clazz, DBSelection<T> selection) {
-		checkClass(clazz);
-		List<T> list = new ArrayList<>();
-		Table<T> table = checkTable(clazz);
-		Cursor c = null;
+	private <T extends Serializable> boolean importRow(Table<T> table, SQLiteStatement insert, SQLiteStatement update, Object[] values,
+			int[] uniqueIndexes, int timeIndex) {
+		Column[] valueColumns = table.mapper.valueColumns;
+		long time = System.currentTimeMillis();
 		try {
-			if (selection == null) {
-				selection = getSelection(clazz.newInstance());
-			}
-			String[] selectionArgs = selection.selectionArgs;
-			if (XLog.isLogging()) {
-				String sql = SQLiteQueryBuilder.buildQueryString(false, table.tableName, null, selection.selection, null, null, selection.orderBy, null);
-				if (selectionArgs != null) {
-					sql = sql.replace("?", "%s");
-					Object[] dest = new Object[selectionArgs.length];
-					System.arraycopy(selectionArgs, 0, dest, 0, selectionArgs.length);
-					XLog.v(TAG, sql, dest);
-				} else {
-					XLog.v(TAG, sql);
+			if (update != null) {
+				update.clearBindings();
+				for (int i = 0; i < values.length; i++) {
+					EntityMapper.bindValue(update, i + 1, valueColumns[i], values[i]);
 				}
-			}
-
-			c = db.query(table.tableName, null, selection.selection, selectionArgs, null, null, selection.orderBy);
-			if (null != c && c.getCount() > 0) {
-				while (c.moveToNext()) {
-					T t = getObject(clazz, c);
-					addRelationData(c, table, t);
-					list.add(t);
+				update.bindLong(timeIndex, time);
+				boolean isNullKey = false;
+				for (int i = 0; i < uniqueIndexes.length; i++) {
+					Object value = values[uniqueIndexes[i]];
+					if (value == null) {
+						isNullKey = true;
+						break;
+					}
+					update.bindString(timeIndex + 1 + i, toArg(value));
+				}
+				if (!isNullKey && update.executeUpdateDelete() > 0) {
+					return true;
 				}
 			}
-		} catch (Exception e) {
-			XLog.w(TAG, e);
-		} finally {
-			if (c != null) {
-				c.close();
+			insert.clearBindings();
+			for (int i = 0; i < values.length; i++) {
+				EntityMapper.bindValue(insert, i + 1, valueColumns[i], values[i]);
 			}
+			insert.bindLong(timeIndex, time);
+			return insert.executeInsert() != -1;
+		} catch (Exception e) {
+			XLog.w(TAG, "operation : %s TABLE %s  exception : %s", "IMPORT", table.tableName, e.toString());
+			return false;
 		}
-		return list;
 	}
 
-
-	private <T extends Serializable> void checkClass(Class<T> clazz) {
-		if (clazz == null) {
-			throw new IllegalArgumentException("clazz must be not null.");
-		}
-		if (!ReflectUtils.hasParameterlessConstructor(clazz)) {
-			throw new IllegalArgumentException(clazz.getName() + " must be has a parameterless constructor.");
+	/**
+	 * @return JSON name => the index of the value column, the names are the field names, the {@link SerializedName}
+	 * and its alternate names.
+	 */
+	private static Map<String, Integer> getJsonNames(Column[] valueColumns) {
+		Map<String, Integer> names = new HashMap<>();
+		for (int i = 0; i < valueColumns.length; i++) {
+			Field field = valueColumns[i].field;
+			names.put(field.getName(), i);
+			SerializedName serializedName = field.getAnnotation(SerializedName.class);
+			if (serializedName != null) {
+				names.put(serializedName.value(), i);
+				for (String name : serializedName.alternate()) {
+					names.put(name, i);
+				}
+			}
 		}
+		return names;
 	}
 
 	/**
-	 * add the relation data to t.
-	 *
-	 * @param c     cursor
-	 * @param table table
-	 * @param t     t
-	 * @throws Exception
+	 * read the JSON object into the values, the unknown names and the nested values are skipped. The JSON null keeps
+	 * the default value of the primitive column like Gson.
 	 */
-	private <T extends Serializable> void addRelationData(Cursor c, Table<T> table, T t) throws Exception {
-		if (t == null) {
-			return;
-		}
-		for (int i = 0; i < table.otherTypeField.size(); i++) {
-			Field field = table.otherTypeField.get(i);
-			Class<T> clazz1 = ReflectUtils.getFieldClass(field);
-			if (clazz1 == null || ReflectUtils.isNormalGenericType(clazz1)) {
+	private static void readJsonValues(JsonReader reader, Column[] valueColumns, Map<String, Integer> names, Object[] values)
+			throws IOException {
+		reader.beginObject();
+		while (reader.hasNext()) {
+			Integer index = names.get(reader.nextName());
+			if (index == null) {
+				reader.skipValue();
 				continue;
 			}
-			int columnIndex = c.getColumnIndex(field.getName());
-			if (columnIndex == -1) {
-				continue;
-			}
-			String cv = c.getString(columnIndex);
-			if (TextUtils.isEmpty(cv)) {
+			Column column = valueColumns[index];
+			if (reader.peek() == JsonToken.NULL) {
+				reader.nextNull();
+				if (!column.field.getType().isPrimitive()) {
+					values[index] = null;
+				}
 				continue;
 			}
+			values[index] = readJsonValue(reader, column);
+		}
+		reader.endObject();
+	}
 
-			DBSelection<T> dbSelection = new DBSelection<>();
-			dbSelection.selection = "ROWID=?";
-			if (field.getType() == List.class || field.getType() == ArrayList.class) {
-				List<T> l = new ArrayList<>();
-				String[] rowIDs = cv.split(ROW_ID_SPLIT);
-				for (String rowID : rowIDs) {
-					dbSelection.selectionArgs = new String[]{rowID};
-					l.addAll(selectBySelection(clazz1, dbSelection));
-				}
-				field.set(t, l);
-			} else if(field.getType() == clazz1) {
-				dbSelection.selectionArgs = new String[]{cv};
-				List<T> l = selectBySelection(clazz1, dbSelection);
-				if (l.isEmpty()) {
-					continue;
+	static Object readJsonValue(JsonReader reader, Column column) throws IOException {
+		JsonToken token = reader.peek();
+		switch (column.type) {
+			case EntityMapper.TYPE_STRING:
+				if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+					return reader.nextString();
+				} else if (token == JsonToken.BOOLEAN) {
+					return String.valueOf(reader.nextBoolean());
 				}
-				T obj = l.get(0);
-				if (obj == null) {
-					continue;
+				break;
+			case EntityMapper.TYPE_LONG:
+			case EntityMapper.TYPE_INT:
+			case EntityMapper.TYPE_SHORT:
+				if (token == JsonToken.NUMBER || token == JsonToken.STRING) {
+					return reader.nextLong();
+				}
+				break;
+			case EntityMapper.TYPE_DOUBLE:
+			case EntityMapper.TYPE_FLOAT:
+				if (token == JsonToken.NUMBER || token == JsonToken.STRING) {
+					return reader.nextDouble();
 				}
+				break;
+			case EntityMapper.TYPE_BOOLEAN:
+				if (token == JsonToken.BOOLEAN) {
+					return reader.nextBoolean();
+				} else if (token == JsonToken.NUMBER) {
+					return reader.nextInt() != 0;
+				} else if (token == JsonToken.STRING) {
+					String value = reader.nextString();
+					return "1".equals(value) || Boolean.valueOf(value);
+				}
+				break;
+			case EntityMapper.TYPE_BLOB:
+			case EntityMapper.TYPE_BYTE_ARRAY:
+				if (token == JsonToken.BEGIN_ARRAY) {// Gson writes the bytes as an array of numbers.
+					ByteArrayOutputStream out = new ByteArrayOutputStream();
+					reader.beginArray();
+					while (reader.hasNext()) {
+						out.write(reader.nextInt());
+					}
+					reader.endArray();
+					return out.toByteArray();
+				}
+				break;
+			default:
+				break;
+		}
+		throw new JsonSyntaxException("unexpected " + token + " of " + column.name + " at " + reader.getPath());
+	}
 
-				field.set(t, obj);
+	/**
+	 * the bulk path handles the tables without relation columns, whose unique columns can be compared by value.
+	 */
+	private <T extends Serializable> boolean isBulkSupported(Table<T> table) {
+		if (!table.otherTypeField.isEmpty()) {
+			return false;
+		}
+		for (Column column : table.mapper.uniqueColumns) {
+			if (column.encrypt || column.type == EntityMapper.TYPE_BLOB || column.type == EntityMapper.TYPE_BYTE_ARRAY) {
+				return false;
 			}
 		}
+		return true;
 	}
 
 	/**
-	 * delete the relation data.
+	 * get the primary keys of the exist beans by one query.
 	 *
-	 * @param clazz     parent table
-	 * @param selection unique selection
-	 * @param table     can be null.
+	 * @param table table
+	 * @param chunk beans
+	 * @return unique key => primary key
+	 * @see #getUniqueKey(Column[], Serializable)
 	 */
-	private <T extends Serializable> void deleteRelationTableData(Class<T> clazz, DBSelection<T> selection, Table<T> table) {
-		if (table == null) {
-			table = checkTable(clazz);
+	private <T extends Serializable> Map<String, Long> getPrimaryKeyValues(Table<T> table, List<T> chunk) throws Exception {
+		Map<String, Long> ids = new HashMap<>();
+		Column[] uniqueColumns = table.mapper.uniqueColumns;
+		if (uniqueColumns.length == 0) {
+			return ids;
 		}
-		Cursor c = db.query(table.tableName, null, selection.selection, selection.selectionArgs, null, null, null);
-		if (c != null && c.moveToFirst()) {
-			for (int i = 0; i < table.otherTypeField.size(); i++) {
-				Field field = table.otherTypeField.get(i);
-				Class<T> clazz1 = ReflectUtils.getFieldClass(field);
-				if (clazz1 == null || ReflectUtils.isNormalGenericType(clazz1)) {
-					continue;
-				}
-				int columnIndex = c.getColumnIndex(field.getName());
-				if (columnIndex == -1) {
-					continue;
+		StringBuilder sql = new StringBuilder("SELECT ");
+		sql.append(PRIMARY_KEY_COLUMN);
+		for (Column column : uniqueColumns) {
+			sql.append(",`").append(column.name).append("`");
+		}
+		sql.append(" FROM ").append(table.tableName).append(" WHERE ");
+		List<String> args = new ArrayList<>();
+		if (uniqueColumns.length == 1) {
+			sql.append("`").append(uniqueColumns[0].name).append("` IN (");
+			for (T bean : chunk) {
+				Object value = uniqueColumns[0].get(bean);
+				if (value != null) {
+					sql.append("?,");
+					args.add(toArg(value));
 				}
-				String cv = c.getString(columnIndex);
-				if (TextUtils.isEmpty(cv)) {
+			}
+			sql.setCharAt(sql.length() - 1, ')');
+		} else {
+			for (T bean : chunk) {
+				if (getUniqueKey(uniqueColumns, bean) == null) {
 					continue;
 				}
-				String[] rowIDs = cv.split(ROW_ID_SPLIT);
-				for (String rowID : rowIDs) {
-					DBSelection<T> sel = new DBSelection<>();
-					sel.selection = "ROWID=?";
-					sel.selectionArgs = new String[]{rowID};
-					deleteBySelection(clazz1, sel);
-					XLog.v(TAG, "operation : %s TABLE %s success. And the ROWID = %s ", "DELETE", clazz1.getSimpleName(), rowID);
+				sql.append("(");
+				for (Column column : uniqueColumns) {
+					sql.append("`").append(column.name).append("`=? AND ");
+					args.add(toArg(column.get(bean)));
 				}
+				sql.delete(sql.length() - 5, sql.length());
+				sql.append(") OR ");
 			}
+			sql.delete(sql.length() - 4, sql.length());
 		}
-		if (c != null) {
-			c.close();
+		if (args.isEmpty()) {
+			return ids;
+		}
+		Cursor c = db.rawQuery(sql.toString(), args.toArray(new String[args.size()]));
+		try {
+			StringBuilder key = new StringBuilder();
+			while (c.moveToNext()) {
+				key.setLength(0);
+				try {
+					for (int i = 0; i < uniqueColumns.length; i++) {
+						key.append(EntityMapper.parse(uniqueColumns[i].type, c.getString(i + 1))).append(UNIQUE_KEY_SPLIT);
+					}
+				} catch (NumberFormatException e) {
+					continue;
+				}
+				ids.put(key.toString(), c.getLong(0));
+			}
+		} finally {
+			c.close();
+		}
+		return ids;
+	}
+
+	/**
+	 * @return the joined unique values of the bean, null if any of them is null.
+	 */
+	private static String getUniqueKey(Column[] uniqueColumns, Object bean) throws IllegalAccessException {
+		if (uniqueColumns.length == 0) {
+			return null;
+		}
+		StringBuilder key = new StringBuilder();
+		for (Column column : uniqueColumns) {
+			Object value = column.get(bean);
+			if (value == null) {
+				return null;
+			}
+			key.append(value).append(UNIQUE_KEY_SPLIT);
+		}
+		return key.toString();
+	}
+
+	/**
+	 * @return the selection argument of the value, which is same as stored.
+	 */
+	private static String toArg(Object value) {
+		if (value instanceof Boolean) {
+			return (Boolean) value ? "1" : "0";
+		}
+		return String.valueOf(value);
+	}
+
+	/**
+	 * INSERT INTO table(value columns, time column) VALUES(?, ...)
+	 */
+	private <T extends Serializable> String getInsertSQL(Table<T> table) {
+		StringBuilder sql = new StringBuilder("INSERT INTO ");
+		sql.append(table.tableName).append("(");
+		for (Column column : table.mapper.valueColumns) {
+			sql.append("`").append(column.name).append("`,");
+		}
+		sql.append("`").append(TIME_COLUMN).append("`) VALUES(");
+		for (int i = 0; i < table.mapper.valueColumns.length; i++) {
+			sql.append("?,");
+		}
+		sql.append("?)");
+		return sql.toString();
+	}
+
+	/**
+	 * UPDATE table SET value columns=?, time column=? WHERE _id=?
+	 */
+	private <T extends Serializable> String getUpdateSQL(Table<T> table) {
+		StringBuilder sql = new StringBuilder("UPDATE ");
+		sql.append(table.tableName).append(" SET ");
+		for (Column column : table.mapper.valueColumns) {
+			sql.append("`").append(column.name).append("`=?,");
+		}
+		sql.append("`").append(TIME_COLUMN).append("`=? WHERE ").append(PRIMARY_KEY_COLUMN).append("=?");
+		return sql.toString();
+	}
+
+	/**
+	 * INSERT INTO table(value columns, time column) VALUES(?, ...) ON CONFLICT(unique columns) DO UPDATE SET value
+	 * columns=excluded.value columns, time column=excluded.time column
+	 */
+	private <T extends Serializable> String getUpsertSQL(Table<T> table) {
+		StringBuilder sql = new StringBuilder(getInsertSQL(table));
+		sql.append(" ON CONFLICT(");
+		for (Column column : table.mapper.uniqueColumns) {
+			sql.append("`").append(column.name).append("`,");
+		}
+		sql.setCharAt(sql.length() - 1, ')');
+		sql.append(" DO UPDATE SET ");
+		for (Column column : table.mapper.valueColumns) {
+			sql.append("`").append(column.name).append("`=excluded.`").append(column.name).append("`,");
+		}
+		sql.append("`").append(TIME_COLUMN).append("`=excluded.`").append(TIME_COLUMN).append("`");
+		return sql.toString();
+	}
+
+	/**
+	 * UPDATE table SET value columns=?, time column=? WHERE unique columns=?
+	 */
+	private <T extends Serializable> String getUniqueUpdateSQL(Table<T> table) {
+		StringBuilder sql = new StringBuilder("UPDATE ");
+		sql.append(table.tableName).append(" SET ");
+		for (Column column : table.mapper.valueColumns) {
+			sql.append("`").append(column.name).append("`=?,");
+		}
+		sql.append("`").append(TIME_COLUMN).append("`=? WHERE ");
+		for (Column column : table.mapper.uniqueColumns) {
+			sql.append("`").append(column.name).append("`=? AND ");
+		}
+		sql.delete(sql.length() - 5, sql.length());
+		return sql.toString();
+	}
+
+	/**
+	 * group the beans by their class, ignore the null bean.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T extends Serializable> Map<Class<T>, List<T>> groupByClass(List<T> list) {
+		Map<Class<T>, List<T>> groups = new LinkedHashMap<>();
+		for (T bean : list) {
+			if (bean == null) {
+				continue;
+			}
+			Class<T> clazz = (Class<T>) bean.getClass();
+			List<T> group = groups.get(clazz);
+			if (group == null) {
+				group = new ArrayList<>();
+				groups.put(clazz, group);
+			}
+			group.add(bean);
+		}
+		return groups;
+	}
+
+	/**
+	 * Convenience method for deleting rows in the database.
+	 *
+	 * @param list data list for deleting.
+	 * @return the number of rows affected if a whereClause is passed in, 0 otherwise. To remove all rows and get a
+	 * count pass "1" as the whereClause.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Serializable> int delete(List<T> list) {
+		int count = 0;
+		if (list == null || list.isEmpty()) {
+			return count;
+		}
+		long l = System.currentTimeMillis();
+		Map<String, SQLiteStatement> statements = new HashMap<>();
+		Set<String> tableNames = new HashSet<>();
+		for (T bean : list) {
+			if (bean != null) {
+				checkTables((Class<T>) bean.getClass());
+			}
+		}
+		db.beginTransaction();
+		try {
+			for (T bean : list) {
+				if (bean == null)
+					continue;
+				count += delete(bean, statements);
+				tableNames.add(bean.getClass().getSimpleName());
+			}
+			db.setTransactionSuccessful();
+		} catch (Exception e) {
+			XLog.w(TAG, e);
+			count = 0;
+		} finally {
+			endTransaction();
+			for (SQLiteStatement statement : statements.values()) {
+				statement.close();
+			}
+			for (String tableName : tableNames) {
+				notifyTableChanged(tableName);
+			}
+		}
+		XLog.i(TAG, "delete list size is %d, success %d, cost %d", list.size(), count, System.currentTimeMillis() - l);
+		return count;
+	}
+
+	/**
+	 * delete the bean with the compiled DELETE statement of the same selection.
+	 *
+	 * @param t          data for deleting
+	 * @param statements selection => compiled statement
+	 * @return the number of rows affected
+	 */
+	@SuppressWarnings("unchecked")
+	private <T extends Serializable> int delete(T t, Map<String, SQLiteStatement> statements) {
+		Table<T> table = (Table<T>) checkTable(t.getClass());
+		DBSelection<T> selection = getSelection(t);
+		if (!table.otherTypeField.isEmpty() || Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+			return deleteBySelection(table.tableClass, selection);
+		}
+		String sql = "DELETE FROM " + table.tableName + (selection.selection == null ? "" : " WHERE " + selection.selection);
+		try {
+			SQLiteStatement statement = statements.get(sql);
+			if (statement == null) {
+				statement = db.compileStatement(sql);
+				statements.put(sql, statement);
+			}
+			statement.clearBindings();
+			if (selection.selectionArgs != null) {
+				for (int i = 0; i < selection.selectionArgs.length; i++) {
+					statement.bindString(i + 1, selection.selectionArgs[i]);
+				}
+			}
+			int count = statement.executeUpdateDelete();
+			notifyTableChanged(table.tableName);
+			return count;
+		} catch (Exception e) {
+			XLog.w(TAG, "operation : %s TABLE %s exception : %s", "DELETE FROM ", table.tableName, e.toString());
+			return 0;
+		}
+	}
+
+	/**
+	 * Convenience method for deleting rows in the database.
+	 *
+	 * @param t data for deleting.
+	 * @return the number of rows affected if a whereClause is passed in, 0 otherwise. To remove all rows and get a
+	 * count pass "1" as the whereClause.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Serializable> int delete(T t) {
+		Table<T> table = (Table<T>) checkTable(t.getClass());
+		return deleteBySelection(table.tableClass, getSelection(t));
+	}
+	/**
+	 * Convenience method for deleting rows in the database.
+	 *
+	 * @param clazz data for deleting.
+	 * @return the number of rows affected if a whereClause is passed in, 0 otherwise. To remove all rows and get a
+	 * count pass "1" as the whereClause.
+	 */
+	public <T extends Serializable> int deleteBySelection(Class<T> clazz, DBSelection<T> selection) {
+		int count = 0;
+		String operation = "DELETE FROM ";
+		String tableName = clazz.getSimpleName();
+		try {
+			deleteRelationTableData(clazz, selection, null, true);
+			count += db.delete(tableName, selection.selection, selection.selectionArgs);
+			notifyTableChanged(tableName);
+			XLog.v(TAG, "operation : %s TABLE %s success.", operation, tableName);
+		} catch (Exception e) {
+			XLog.w(TAG, "operation : %s TABLE %s exception : %s", operation, tableName, e.toString());
+		}
+		return count;
+	}
+
+	/**
+	 * find the data with bean.
+	 *
+	 * @param bean which contains field' value. And that can auto consist of selection.
+	 * @return T
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Serializable> T findByBean(T bean) {
+		Class<T> class1 = (Class<T>) bean.getClass();
+		IdentityMap identityMap = this.identityMap;
+		if (identityMap != null) {
+			Table<T> table = checkTable(class1);
+			String uniqueKey = getLookupUniqueKey(table, bean);
+			T cached = uniqueKey == null ? null : (T) identityMap.getByUniqueKey(table.tableName, uniqueKey);
+			if (cached != null) {
+				return cached;
+			}
+		}
+		DBSelection<T> selection = getSelection(bean);
+		return findBySelection(class1, selection);
+	}
+
+	/**
+	 * @return the unique key if the selection of the bean is made of the unique columns only, otherwise null.
+	 * @see #getSelection(Serializable)
+	 */
+	private <T extends Serializable> String getLookupUniqueKey(Table<T> table, T bean) {
+		if (table.mapper.uniqueColumns.length == 0) {
+			return null;
+		}
+		try {
+			for (Column column : table.mapper.columns) {
+				Object value = column.get(bean);
+				boolean isSelected = (value instanceof Number && ((Number) value).intValue() != 0) || value instanceof String || value instanceof Byte[];
+				if (isSelected != column.unique) {
+					return null;
+				}
+			}
+			return getUniqueKey(table.mapper.uniqueColumns, bean);
+		} catch (IllegalAccessException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * enable the first-level cache of the beans.
+	 *
+	 * @param maxSize the max count of the beans, 0 disables it.
+	 */
+	public void setIdentityMapSize(int maxSize) {
+		identityMap = maxSize > 0 ? new IdentityMap(maxSize) : null;
+	}
+
+	/**
+	 * @return the first-level cache of the beans, null if it's disabled.
+	 */
+	public IdentityMap getIdentityMap() {
+		return identityMap;
+	}
+
+	/**
+	 * @return the generation of the table in the identity map, it's got before querying the beans which are cached.
+	 */
+	private long getGeneration(String tableName) {
+		IdentityMap identityMap = this.identityMap;
+		return identityMap == null ? 0 : identityMap.getGeneration(tableName);
+	}
+
+	/**
+	 * it's called after the table is written, the cached beans of the table and the tables which have relations to
+	 * it are dropped, and the versions of them in the result cache are increased. In a transaction it's done again
+	 * after the outermost transaction ends, because the readers of the other connections could cache the rows
+	 * before the commit in the meantime.
+	 *
+	 * @param tableName table name
+	 */
+	private void notifyTableChanged(String tableName) {
+		IdentityMap identityMap = this.identityMap;
+		ResultCache resultCache = this.resultCache;
+		if (identityMap == null && resultCache == null) {
+			return;
+		}
+		for (String name : getDependentTables(tableName)) {
+			if (identityMap != null) {
+				identityMap.removeTable(name);
+			}
+			if (resultCache != null) {
+				resultCache.increaseVersion(name);
+			}
+		}
+		if (db.inTransaction()) {
+			changedTables.get().add(tableName);
+		}
+	}
+
+	/**
+	 * end the transaction, and notify the tables written in it again if it's the outermost one.
+	 */
+	private void endTransaction() {
+		db.endTransaction();
+		if (!db.inTransaction()) {
+			notifyChangedTables();
+		}
+	}
+
+	private void notifyChangedTables() {
+		Set<String> tables = changedTables.get();
+		if (tables.isEmpty()) {
+			return;
+		}
+		IdentityMap identityMap = this.identityMap;
+		ResultCache resultCache = this.resultCache;
+		for (String tableName : tables) {
+			for (String name : getDependentTables(tableName)) {
+				if (identityMap != null) {
+					identityMap.removeTable(name);
+				}
+				if (resultCache != null) {
+					resultCache.increaseVersion(name);
+				}
+			}
+		}
+		tables.clear();
+	}
+
+	/**
+	 * @return the table and the tables which have relations to it, recursively.
+	 */
+	private Set<String> getDependentTables(String tableName) {
+		Set<String> tableNames = new LinkedHashSet<>();
+		tableNames.add(tableName);
+		boolean isChanged = true;
+		while (isChanged) {
+			isChanged = false;
+			for (Map.Entry<String, Table> entry : tableMap.entrySet()) {
+				if (!entry.getKey().startsWith(dbName + "_") || tableNames.contains(entry.getValue().tableName)) {
+					continue;
+				}
+				for (Column column : entry.getValue().mapper.otherColumns) {
+					if (column.relationClass != null && tableNames.contains(column.relationClass.getSimpleName())) {
+						tableNames.add(entry.getValue().tableName);
+						isChanged = true;
+						break;
+					}
+				}
+			}
+		}
+		return tableNames;
+	}
+
+	/**
+	 * find the data with selection.
+	 *
+	 * @param clazz     table and bean.
+	 * @param selection A filter declaring which rows to return, formatted as an SQL WHERE clause (excluding the WHERE
+	 *                  itself). Passing null will return all rows for the given table.
+	 * @return clazz's instance
+	 */
+	public <T extends Serializable> T findBySelection(Class<T> clazz, DBSelection<T> selection) {
+		List<T> list = select(clazz, selection, true);
+		return list.size() > 0 ? list.get(0) : null;
+	}
+
+	/**
+	 * find the data with bean.
+	 *
+	 * @param bean which contains field' value. And that can auto consist of selection.
+	 * @return List
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Serializable> List<T> selectByBean(T bean) {
+		DBSelection<T> selection = getSelection(bean);
+		Class<T> class1 = (Class<T>) bean.getClass();
+		return selectBySelection(class1, selection);
+	}
+
+	/**
+	 * find the data with selection.
+	 *
+	 * @param clazz     table and bean.
+	 * @param selection A filter declaring which rows to return, formatted as an SQL WHERE clause (excluding the WHERE
+	 *                  itself). Passing null will return all rows for the given table.
+	 * @return clazz's instance
+	 */
+	public <T extends Serializable> List<T> selectBySelection(Class<T> clazz, DBSelection<T> selection) {
+		return select(clazz, selection, false);
+	}
+
+	/**
+	 * @param isFirst only select the first row, by LIMIT 1.
+	 */
+	private <T extends Serializable> List<T> select(Class<T> clazz, DBSelection<T> selection, boolean isFirst) {
+		checkClass(clazz);
+		List<T> list = new ArrayList<>();
+		Table<T> table = checkTable(clazz);
+		Cursor c = null;
+		try {
+			if (selection == null) {
+				selection = getSelection(table.mapper.newInstance());
+			}
+			String where = selection.getWhere();
+			String[] selectionArgs = selection.getWhereArgs();
+			String limit = isFirst ? DBSelection.getLimit(1, selection.offset) : selection.getLimit();
+			String[] projection = getProjection(table, selection);
+			ResultCache resultCache = this.resultCache;
+			String cacheKey = null;
+			long version = 0;
+			if (resultCache != null) {
+				cacheKey = table.tableName + "|" + where + "|" + Arrays.toString(selectionArgs) + "|" + selection.orderBy + "|" + limit + "|"
+						+ Arrays.toString(selection.columns);
+				List<T> cached = resultCache.get(table.tableName, cacheKey);
+				if (cached != null) {
+					return cached;
+				}
+				version = resultCache.getVersion(table.tableName);
+			}
+			if (XLog.isLogging()) {
+				String sql = SQLiteQueryBuilder.buildQueryString(false, table.tableName, projection, where, null, null, selection.orderBy, limit);
+				if (selectionArgs != null) {
+					sql = sql.replace("?", "%s");
+					Object[] dest = new Object[selectionArgs.length];
+					System.arraycopy(selectionArgs, 0, dest, 0, selectionArgs.length);
+					XLog.v(TAG, sql, dest);
+				} else {
+					XLog.v(TAG, sql);
+				}
+			}
+
+			long generation = getGeneration(table.tableName);
+			c = db.query(table.tableName, projection, where, selectionArgs, null, null, selection.orderBy, limit);
+			if (null != c && c.getCount() > 0) {
+				list.addAll(readRows(table, c, null, Integer.MAX_VALUE, selection.columns, generation));
+			}
+			if (resultCache != null) {
+				resultCache.put(table.tableName, cacheKey, version, list, estimateSize(table, list));
+			}
+		} catch (Exception e) {
+			XLog.w(TAG, e);
+		} finally {
+			if (c != null) {
+				c.close();
+			}
+		}
+		return list;
+	}
+
+
+	/**
+	 * estimate the bytes of the beans by the average of the first few beans. The relation beans aren't counted.
+	 */
+	private <T extends Serializable> long estimateSize(Table<T> table, List<T> list) {
+		int sampleCount = Math.min(list.size(), 10);
+		long size = 0;
+		for (int i = 0; i < sampleCount; i++) {
+			size += 16;
+			for (Column column : table.mapper.valueColumns) {
+				Object value;
+				try {
+					value = column.get(list.get(i));
+				} catch (IllegalAccessException e) {
+					continue;
+				}
+				if (value instanceof String) {
+					size += 40 + 2 * ((String) value).length();
+				} else if (value instanceof byte[]) {
+					size += 16 + ((byte[]) value).length;
+				} else if (value instanceof Byte[]) {
+					size += 16 + 16 * ((Byte[]) value).length;
+				} else {
+					size += 16;
+				}
+			}
+		}
+		return sampleCount == 0 ? 16 : size * list.size() / sampleCount;
+	}
+
+	/**
+	 * enable the cache of the query results.
+	 *
+	 * @param maxCount the max count of the results, 0 disables it.
+	 * @param maxBytes the max estimated bytes of the results, 0 means no limit.
+	 */
+	public void setResultCacheSize(int maxCount, long maxBytes) {
+		resultCache = maxCount > 0 ? new ResultCache(maxCount, maxBytes) : null;
+	}
+
+	/**
+	 * @return the cache of the query results, null if it's disabled.
+	 */
+	public ResultCache getResultCache() {
+		return resultCache;
+	}
+
+	/**
+	 * query the data with selection lazily. The rows are read when they are accessed, see {@link CursorList}.
+	 *
+	 * @param clazz     table and bean.
+	 * @param selection A filter declaring which rows to return, formatted as an SQL WHERE clause (excluding the WHERE
+	 *                  itself). Passing null will return all rows for the given table.
+	 * @return the CursorList, it must be closed after using.
+	 */
+	public <T extends Serializable> CursorList<T> query(Class<T> clazz, DBSelection<T> selection) {
+		checkClass(clazz);
+		final Table<T> table = checkTable(clazz);
+		Cursor c = null;
+		final String[] fields = selection == null ? null : selection.columns;
+		try {
+			if (selection == null) {
+				selection = getSelection(table.mapper.newInstance());
+			}
+			XLog.v(TAG, "query %s WHERE %s ORDER BY %s LIMIT %s", table.tableName, selection.getWhere(), selection.orderBy, selection.getLimit());
+			c = db.query(table.tableName, getProjection(table, selection), selection.getWhere(), selection.getWhereArgs(), null, null, selection.orderBy,
+					selection.getLimit());
+		} catch (Exception e) {
+			XLog.w(TAG, e);
+		}
+		return new CursorList<>(c, new CursorList.Loader<T>() {
+
+			@Override
+			public List<T> load(Cursor c, int position, int count) throws Exception {
+				// the window of the cursor is filled when it's moved.
+				long generation = getGeneration(table.tableName);
+				c.moveToPosition(position - 1);
+				return readRows(table, c, null, count, fields, generation);
+			}
+		}, CursorList.DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * count the rows by SELECT COUNT(*).
+	 *
+	 * @param clazz     table
+	 * @param selection filter, null means all rows.
+	 * @return the count
+	 */
+	public <T extends Serializable> long count(Class<T> clazz, DBSelection<T> selection) {
+		Table<T> table = checkTable(clazz);
+		String sql = "SELECT COUNT(*) FROM " + table.tableName + getWhereClause(selection);
+		try {
+			return longForQuery(sql, selection == null ? null : selection.getWhereArgs());
+		} catch (Exception e) {
+			XLog.w(TAG, "%s exception : %s", sql, e.toString());
+		}
+		return 0;
+	}
+
+	/**
+	 * whether any row matches, by SELECT EXISTS(...).
+	 *
+	 * @param clazz     table
+	 * @param selection filter, null means all rows.
+	 * @return true if exists
+	 */
+	public <T extends Serializable> boolean exists(Class<T> clazz, DBSelection<T> selection) {
+		Table<T> table = checkTable(clazz);
+		String sql = "SELECT EXISTS(SELECT 1 FROM " + table.tableName + getWhereClause(selection) + ")";
+		try {
+			return longForQuery(sql, selection == null ? null : selection.getWhereArgs()) != 0;
+		} catch (Exception e) {
+			XLog.w(TAG, "%s exception : %s", sql, e.toString());
+		}
+		return false;
+	}
+
+	/**
+	 * search the {@link com.lokiy.x.db.annotation.FullText} columns. Each word of the query matches the words with
+	 * it as the prefix, the words shorter than {@link #MIN_PREFIX_LENGTH} match the whole words only, and all the
+	 * words must be matched. The rows are ranked by the matched words, the rare words weigh more.<BR>
+	 * At most {@link #SEARCH_CANDIDATES} (or the limit if it's larger) matched rows are ranked, in the order of
+	 * ROWID, and the beans of the top rows are loaded by ROWID. So a broad query ranks the earlier rows only, and the
+	 * limit should be small, e.g. a page of typeahead.
+	 *
+	 * @param clazz table
+	 * @param query the words split by the white spaces, the FTS operators are matched as words.
+	 * @param limit the max count of the result
+	 * @return the ranked beans, empty if the query is blank.
+	 */
+	public <T extends Serializable> List<T> search(Class<T> clazz, String query, int limit) {
+		Table<T> table = checkTable(clazz);
+		if (table.mapper.fullTextColumns.length == 0) {
+			throw new IllegalArgumentException(clazz.getName() + " hasn't any @FullText column.");
+		}
+		List<T> list = new ArrayList<>();
+		String match = getMatchQuery(query);
+		if (match == null || limit <= 0) {
+			return list;
+		}
+		String ftsTable = FULL_TEXT_TABLE_PREFIX + table.tableName;
+		// matchinfo of FTS3 hasn't the 'x' of all the rows, the rows aren't ranked on it.
+		boolean isRanked = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+		String sql = isRanked ? "SELECT docid, matchinfo(`" + ftsTable + "`, 'pcx') FROM `" + ftsTable + "` WHERE `" + ftsTable + "` MATCH ? LIMIT "
+				+ Math.max(limit, SEARCH_CANDIDATES) : "SELECT docid FROM `" + ftsTable + "` WHERE `" + ftsTable + "` MATCH ? LIMIT " + limit;
+		XLog.start(TAG, "SEARCH " + table.tableName);
+		Cursor c = null;
+		try {
+			PriorityQueue<SearchHit> hits = new PriorityQueue<>(Math.min(limit, CHUNK_SIZE), SearchHit.COMPARATOR);
+			c = db.rawQuery(sql, new String[]{match});
+			while (c != null && c.moveToNext()) {
+				SearchHit hit = new SearchHit(c.getLong(0), isRanked ? getRank(c.getBlob(1)) : 0);
+				if (hits.size() < limit) {
+					hits.add(hit);
+				} else if (SearchHit.COMPARATOR.compare(hit, hits.peek()) > 0) {
+					hits.poll();
+					hits.add(hit);
+				}
+			}
+			List<SearchHit> ranked = new ArrayList<>(hits);
+			Collections.sort(ranked, Collections.reverseOrder(SearchHit.COMPARATOR));
+			List<Long> rowIDs = new ArrayList<>(ranked.size());
+			for (SearchHit hit : ranked) {
+				rowIDs.add(hit.rowID);
+			}
+			Map<Long, T> rows = selectByRowIDs(clazz, rowIDs);
+			for (Long rowID : rowIDs) {
+				T t = rows.get(rowID);
+				if (t != null) {
+					list.add(t);
+				}
+			}
+		} catch (Exception e) {
+			XLog.w(TAG, "%s exception : %s", sql, e.toString());
+		} finally {
+			if (c != null) c.close();
+		}
+		XLog.end(TAG, "SEARCH " + table.tableName);
+		return list;
+	}
+
+	/**
+	 * @return the MATCH expression of the words as the quoted prefix queries, null if there isn't any word.
+	 */
+	private static String getMatchQuery(String query) {
+		if (query == null) {
+			return null;
+		}
+		StringBuilder sb = new StringBuilder();
+		for (String word : query.trim().split("\\s+")) {
+			word = word.replace("\"", "");
+			if (word.length() > 0) {
+				sb.append(sb.length() == 0 ? "\"" : " \"").append(word).append(word.length() < MIN_PREFIX_LENGTH ? "\"" : "*\"");
+			}
+		}
+		return sb.length() == 0 ? null : sb.toString();
+	}
+
+	/**
+	 * @param matchInfo the matchinfo 'pcx', the 32-bit integers in the native byte order.
+	 * @return the sum of the hits in the row / the hits in all the rows of each word and column.
+	 */
+	private static double getRank(byte[] matchInfo) {
+		if (matchInfo == null || matchInfo.length < 8) {
+			return 0;
+		}
+		IntBuffer info = ByteBuffer.wrap(matchInfo).order(ByteOrder.nativeOrder()).asIntBuffer();
+		int phrases = info.get(0);
+		int columns = info.get(1);
+		double rank = 0;
+		for (int i = 0; i < phrases * columns && 2 + i * 3 + 1 < info.limit(); i++) {
+			int hits = info.get(2 + i * 3);
+			int allHits = info.get(2 + i * 3 + 1);
+			if (hits > 0 && allHits > 0) {
+				rank += (double) hits / allHits;
+			}
+		}
+		return rank;
+	}
+
+	private static class SearchHit {
+		/** the lower rank is less, and the later row is less if the ranks are the same. */
+		static final Comparator<SearchHit> COMPARATOR = new Comparator<SearchHit>() {
+
+			@Override
+			public int compare(SearchHit lhs, SearchHit rhs) {
+				int result = Double.compare(lhs.rank, rhs.rank);
+				return result != 0 ? result : (lhs.rowID < rhs.rowID ? 1 : (lhs.rowID == rhs.rowID ? 0 : -1));
+			}
+		};
+		final long rowID;
+		final double rank;
+
+		SearchHit(long rowID, double rank) {
+			this.rowID = rowID;
+			this.rank = rank;
+		}
+	}
+
+	/**
+	 * run the aggregate function on the column, e.g. SUM, MIN, MAX, AVG.
+	 *
+	 * @param clazz     table
+	 * @param function  aggregate function
+	 * @param column    field name
+	 * @param selection filter, null means all rows.
+	 * @return the result, a Long if it's an integer (e.g. SUM of an INTEGER column) so the 64-bit values are exact,
+	 * otherwise a Double. It's 0 if there isn't any row.
+	 */
+	public <T extends Serializable> Number aggregate(Class<T> clazz, String function, String column, DBSelection<T> selection) {
+		Table<T> table = checkTable(clazz);
+		String sql = "SELECT " + function + "(" + getAggregateColumn(table, column) + ") FROM " + table.tableName + getWhereClause(selection);
+		boolean isInteger = EntityMapper.AFFINITY_INTEGER.equals(table.mapper.getColumn(column).affinity) && !"AVG".equalsIgnoreCase(function);
+		Cursor c = null;
+		try {
+			c = db.rawQuery(sql, selection == null ? null : selection.getWhereArgs());
+			if (c != null && c.moveToFirst() && !c.isNull(0)) {
+				if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+					isInteger = c.getType(0) == Cursor.FIELD_TYPE_INTEGER;
+				}
+				if (isInteger) {
+					return c.getLong(0);
+				}
+				return c.getDouble(0);
+			}
+		} catch (Exception e) {
+			XLog.w(TAG, "%s exception : %s", sql, e.toString());
+		} finally {
+			if (c != null) {
+				c.close();
+			}
+		}
+		if (isInteger) {
+			return 0L;
+		}
+		return 0.0;
+	}
+
+	/**
+	 * count the rows of each value of the column, by GROUP BY.
+	 *
+	 * @param clazz     table
+	 * @param column    field name
+	 * @param selection filter, null means all rows. The orderBy is used to sort the groups, it's the column if it's
+	 *                  null.
+	 * @return value => count, in the order of the groups. The null value is mapped with null.
+	 */
+	public <T extends Serializable> Map<String, Long> groupBy(Class<T> clazz, String column, DBSelection<T> selection) {
+		Table<T> table = checkTable(clazz);
+		String name = getAggregateColumn(table, column);
+		String orderBy = selection == null || TextUtils.isEmpty(selection.orderBy) ? name : selection.orderBy;
+		String sql = "SELECT " + name + ", COUNT(*) FROM " + table.tableName + getWhereClause(selection) + " GROUP BY " + name + " ORDER BY " + orderBy;
+		Map<String, Long> groups = new LinkedHashMap<>();
+		Cursor c = null;
+		try {
+			c = db.rawQuery(sql, selection == null ? null : selection.getWhereArgs());
+			while (c != null && c.moveToNext()) {
+				groups.put(c.getString(0), c.getLong(1));
+			}
+		} catch (Exception e) {
+			XLog.w(TAG, "%s exception : %s", sql, e.toString());
+		} finally {
+			if (c != null) {
+				c.close();
+			}
+		}
+		return groups;
+	}
+
+	/**
+	 * run the scalar query with the cached compiled statement, the same shape of the query (the sql) is compiled
+	 * only once. The statement is taken out of the cache while it's used, so the queries run concurrently without
+	 * holding the lock of the cache, and the concurrent queries of the same sql use their own statements.
+	 *
+	 * @param sql  sql
+	 * @param args arguments
+	 * @return the value of the first column of the first row
+	 */
+	private long longForQuery(String sql, String[] args) {
+		SQLiteStatement statement;
+		synchronized (queryStatementMap) {
+			statement = queryStatementMap.remove(sql);
+		}
+		if (statement == null) {
+			statement = db.compileStatement(sql);
+		}
+		try {
+			statement.clearBindings();
+			for (int i = 0; args != null && i < args.length; i++) {
+				if (args[i] == null) {
+					statement.bindNull(i + 1);
+				} else {
+					statement.bindString(i + 1, args[i]);
+				}
+			}
+			return statement.simpleQueryForLong();
+		} finally {
+			releaseQueryStatement(sql, statement);
+		}
+	}
+
+	/**
+	 * put the statement back to the cache, it's closed if the cache has one of the sql or the database is closed.
+	 */
+	private void releaseQueryStatement(String sql, SQLiteStatement statement) {
+		synchronized (queryStatementMap) {
+			if (db.isOpen() && !queryStatementMap.containsKey(sql)) {
+				queryStatementMap.put(sql, statement);
+				return;
+			}
+		}
+		statement.close();
+	}
+
+	/**
+	 * @return " WHERE ..." of the selection, empty if there isn't.
+	 */
+	private static <T extends Serializable> String getWhereClause(DBSelection<T> selection) {
+		String where = selection == null ? null : selection.getWhere();
+		return TextUtils.isEmpty(where) ? "" : " WHERE " + where;
+	}
+
+	/**
+	 * @return the quoted column name, the column must be a value column of the table.
+	 */
+	private <T extends Serializable> String getAggregateColumn(Table<T> table, String column) {
+		Column c = table.mapper.getColumn(column);
+		if (c == null || c.type == EntityMapper.TYPE_OTHER) {
+			throw new IllegalArgumentException(column + " isn't a column of " + table.tableName);
+		}
+		return "`" + c.name + "`";
+	}
+
+	/**
+	 * @return the projection of {@link DBSelection#columns}, with the primary key which the relations depend on. null
+	 * means all.
+	 */
+	private <T extends Serializable> String[] getProjection(Table<T> table, DBSelection<T> selection) {
+		if (selection.columns == null || selection.columns.length == 0) {
+			return null;
+		}
+		List<String> projection = new ArrayList<>();
+		projection.add(PRIMARY_KEY_COLUMN);
+		for (String name : selection.columns) {
+			Column column = table.mapper.getColumn(name);
+			if (column == null) {
+				XLog.w(TAG, "the column %s isn't found in %s.", name, table.tableName);
+			} else if (!column.isLink) {
+				projection.add("`" + column.name + "`");
+			}
+		}
+		return projection.toArray(new String[projection.size()]);
+	}
+
+	private <T extends Serializable> void checkClass(Class<T> clazz) {
+		if (clazz == null) {
+			throw new IllegalArgumentException("clazz must be not null.");
+		}
+		if (!EntityMapper.of(clazz).hasConstructor()) {
+			throw new IllegalArgumentException(clazz.getName() + " must be has a parameterless constructor.");
+		}
+	}
+
+	/**
+	 * read all the rows of the cursor, then load the relation data of them in batches.
+	 *
+	 * @param table  table
+	 * @param c      cursor, it isn't closed.
+	 * @param rowIDs     if it isn't null, the ROWID of each row is added to it.
+	 * @param generation the generation of the table in the identity map before querying, see
+	 *                   {@link #getGeneration(String)}.
+	 * @return the beans
+	 * @throws Exception
+	 */
+	private <T extends Serializable> List<T> readRows(Table<T> table, Cursor c, List<Long> rowIDs, long generation) throws Exception {
+		return readRows(table, c, rowIDs, Integer.MAX_VALUE, null, generation);
+	}
+
+	/**
+	 * read the rows after the current position of the cursor, then load the relation data of them in batches.
+	 *
+	 * @param maxCount the max count of the rows.
+	 * @param fields   the selected fields, null means all. The relation fields which aren't selected aren't loaded.
+	 */
+	private <T extends Serializable> List<T> readRows(Table<T> table, Cursor c, List<Long> rowIDs, int maxCount, String[] fields, long generation)
+			throws Exception {
+		List<T> list = new ArrayList<>();
+		EntityMapper<T> mapper = table.mapper;
+		int[] indexes = mapper.getColumnIndexes(c);
+		Column[] otherColumns = mapper.otherColumns;
+		int[] relationIndexes = new int[otherColumns.length];
+		for (int i = 0; i < otherColumns.length; i++) {
+			relationIndexes[i] = c.getColumnIndex(otherColumns[i].name);
+		}
+		int idIndex = c.getColumnIndex(PRIMARY_KEY_COLUMN);
+		List<Long> ids = new ArrayList<>();
+		List<String[]> relations = new ArrayList<>();
+		while (list.size() < maxCount && c.moveToNext()) {
+			T t = mapper.newInstance();
+			mapper.fill(t, c, indexes);
+			if (otherColumns.length > 0) {
+				String[] values = new String[otherColumns.length];
+				for (int i = 0; i < otherColumns.length; i++) {
+					values[i] = relationIndexes[i] == -1 ? null : c.getString(relationIndexes[i]);
+				}
+				relations.add(values);
+			}
+			ids.add(idIndex == -1 ? -1 : c.getLong(idIndex));
+			list.add(t);
+		}
+		if (otherColumns.length > 0 && !list.isEmpty()) {
+			boolean[] isLoaded = new boolean[otherColumns.length];
+			for (int i = 0; i < otherColumns.length; i++) {
+				isLoaded[i] = fields == null || Arrays.asList(fields).contains(otherColumns[i].name);
+			}
+			addRelationData(table, list, ids, relations, isLoaded);
+		}
+		IdentityMap identityMap = this.identityMap;
+		if (identityMap != null && fields == null) {// the partial beans aren't cached.
+			for (int i = 0; i < list.size(); i++) {
+				if (ids.get(i) > 0) {
+					identityMap.put(table.tableName, generation, ids.get(i), getUniqueKey(mapper.uniqueColumns, list.get(i)), list.get(i));
+				}
+			}
+		}
+		if (rowIDs != null) {
+			rowIDs.addAll(ids);
+		}
+		return list;
+	}
+
+	/**
+	 * add the relation data to the beans. The rowIDs of a relation column are gathered from all the beans and the
+	 * relation rows are queried together, so a beans list costs one query per relation column (and per
+	 * {@link #MAX_VARIABLE_NUMBER} rows) instead of one per rowID.
+	 *
+	 * @param table     table
+	 * @param list      beans
+	 * @param ids       the primary key of each bean.
+	 * @param relations the values of {@link EntityMapper#otherColumns} of each bean.
+	 * @param isLoaded  whether each of {@link EntityMapper#otherColumns} is loaded.
+	 * @throws Exception
+	 */
+	@SuppressWarnings("unchecked")
+	private <T extends Serializable> void addRelationData(Table<T> table, List<T> list, List<Long> ids, List<String[]> relations, boolean[] isLoaded)
+			throws Exception {
+		Column[] otherColumns = table.mapper.otherColumns;
+		Map<String, Map<Long, long[]>> links = null;
+		for (int i = 0; i < otherColumns.length; i++) {
+			Column column = otherColumns[i];
+			Class<T> clazz1 = (Class<T>) column.relationClass;
+			if (!isLoaded[i] || clazz1 == null || (!column.isList && column.field.getType() != clazz1) || !EntityMapper.of(clazz1).hasConstructor()) {
+				continue;
+			}
+			if (column.isLink && links == null) {
+				links = selectLinks(table, ids);
+			}
+			Set<Long> childIDs = new LinkedHashSet<>();
+			long[][] rowIDs = new long[list.size()][];
+			for (int j = 0; j < list.size(); j++) {
+				if (column.isLink) {
+					Map<Long, long[]> fieldLinks = links.get(column.name);
+					rowIDs[j] = fieldLinks == null || !fieldLinks.containsKey(ids.get(j)) ? new long[0] : fieldLinks.get(ids.get(j));
+				} else {
+					rowIDs[j] = parseRowIDs(relations.get(j)[i]);
+				}
+				for (long rowID : rowIDs[j]) {
+					childIDs.add(rowID);
+				}
+			}
+			if (childIDs.isEmpty()) {
+				continue;
+			}
+			Map<Long, T> rows = selectByRowIDs(clazz1, new ArrayList<>(childIDs));
+			Field field = column.field;
+			for (int j = 0; j < list.size(); j++) {
+				if (rowIDs[j].length == 0) {
+					continue;
+				}
+				if (column.isList) {
+					List<T> l = new ArrayList<>();
+					for (long rowID : rowIDs[j]) {
+						T obj = rows.get(rowID);
+						if (obj != null) {
+							l.add(obj);
+						}
+					}
+					field.set(list.get(j), l);
+				} else {
+					T obj = rows.get(rowIDs[j][0]);
+					if (obj != null) {
+						field.set(list.get(j), obj);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * query the link rows of the parents by chunked parent_id IN (...) queries.
+	 *
+	 * @param table parent table
+	 * @param ids   the primary keys of the parents
+	 * @return field => parent_id => child_ids in position order.
+	 */
+	private <T extends Serializable> Map<String, Map<Long, long[]>> selectLinks(Table<T> table, List<Long> ids) {
+		Map<String, Map<Long, List<Long>>> links = new HashMap<>();
+		List<Long> parentIDs = new ArrayList<>(new LinkedHashSet<>(ids));
+		Set<String> linkTables = new LinkedHashSet<>();
+		for (Column column : table.mapper.otherColumns) {
+			if (column.isLink) {
+				linkTables.add(getLinkTableName(table.tableName, column));
+			}
+		}
+		for (int start = 0; start < parentIDs.size(); start += MAX_VARIABLE_NUMBER) {
+			List<Long> chunk = parentIDs.subList(start, Math.min(start + MAX_VARIABLE_NUMBER, parentIDs.size()));
+			for (String name : linkTables) {
+				StringBuilder sql = new StringBuilder("SELECT `" + LINK_FIELD_COLUMN + "`,`" + LINK_PARENT_COLUMN + "`,`" + LINK_CHILD_COLUMN + "` FROM `"
+						+ name + "` WHERE `" + LINK_PARENT_COLUMN + "` IN (");
+				String[] args = new String[chunk.size()];
+				for (int i = 0; i < args.length; i++) {
+					sql.append(i == 0 ? "?" : ",?");
+					args[i] = String.valueOf(chunk.get(i));
+				}
+				sql.append(") ORDER BY `").append(LINK_POSITION_COLUMN).append("`");
+				Cursor c = db.rawQuery(sql.toString(), args);
+				if (c == null) {
+					continue;
+				}
+				try {
+					while (c.moveToNext()) {
+						Map<Long, List<Long>> fieldLinks = links.get(c.getString(0));
+						if (fieldLinks == null) {
+							fieldLinks = new HashMap<>();
+							links.put(c.getString(0), fieldLinks);
+						}
+						List<Long> childIDs = fieldLinks.get(c.getLong(1));
+						if (childIDs == null) {
+							childIDs = new ArrayList<>();
+							fieldLinks.put(c.getLong(1), childIDs);
+						}
+						childIDs.add(c.getLong(2));
+					}
+				} finally {
+					c.close();
+				}
+			}
+		}
+		Map<String, Map<Long, long[]>> result = new HashMap<>();
+		for (Map.Entry<String, Map<Long, List<Long>>> entry : links.entrySet()) {
+			Map<Long, long[]> fieldLinks = new HashMap<>();
+			for (Map.Entry<Long, List<Long>> e : entry.getValue().entrySet()) {
+				long[] childIDs = new long[e.getValue().size()];
+				for (int i = 0; i < childIDs.length; i++) {
+					childIDs[i] = e.getValue().get(i);
+				}
+				fieldLinks.put(e.getKey(), childIDs);
+			}
+			result.put(entry.getKey(), fieldLinks);
+		}
+		return result;
+	}
+
+	/**
+	 * @param value the value of the relation column, rowIDs split by {@link #ROW_ID_SPLIT}.
+	 * @return rowIDs, the invalid ones are ignored.
+	 */
+	private long[] parseRowIDs(String value) {
+		if (TextUtils.isEmpty(value)) {
+			return new long[0];
+		}
+		String[] values = value.split(ROW_ID_SPLIT);
+		long[] rowIDs = new long[values.length];
+		int count = 0;
+		for (String v : values) {
+			try {
+				rowIDs[count] = Long.parseLong(v.trim());
+				count++;
+			} catch (NumberFormatException e) {
+				XLog.w(TAG, "invalid rowID : %s", v);
+			}
+		}
+		return count == rowIDs.length ? rowIDs : Arrays.copyOf(rowIDs, count);
+	}
+
+	/**
+	 * query the rows by ROWID IN (...) in chunks.
+	 *
+	 * @param clazz  table
+	 * @param rowIDs rowIDs
+	 * @return ROWID => bean
+	 * @throws Exception
+	 */
+	@SuppressWarnings("unchecked")
+	private <T extends Serializable> Map<Long, T> selectByRowIDs(Class<T> clazz, List<Long> rowIDs) throws Exception {
+		Map<Long, T> rows = new HashMap<>();
+		Table<T> table = checkTable(clazz);
+		IdentityMap identityMap = this.identityMap;
+		if (identityMap != null) {// the cached rows aren't queried.
+			List<Long> missIDs = new ArrayList<>();
+			for (Long rowID : rowIDs) {
+				T cached = (T) identityMap.get(table.tableName, rowID);
+				if (cached == null) {
+					missIDs.add(rowID);
+				} else {
+					rows.put(rowID, cached);
+				}
+			}
+			rowIDs = missIDs;
+		}
+		for (int start = 0; start < rowIDs.size(); start += MAX_VARIABLE_NUMBER) {
+			List<Long> chunk = rowIDs.subList(start, Math.min(start + MAX_VARIABLE_NUMBER, rowIDs.size()));
+			StringBuilder selection = new StringBuilder("ROWID IN (");
+			String[] selectionArgs = new String[chunk.size()];
+			for (int i = 0; i < selectionArgs.length; i++) {
+				selection.append(i == 0 ? "?" : ",?");
+				selectionArgs[i] = String.valueOf(chunk.get(i));
+			}
+			selection.append(")");
+			XLog.v(TAG, "SELECT FROM %s WHERE ROWID IN (%d rowIDs)", table.tableName, selectionArgs.length);
+			long generation = getGeneration(table.tableName);
+			Cursor c = db.query(table.tableName, null, selection.toString(), selectionArgs, null, null, null);
+			if (c == null) {
+				continue;
+			}
+			try {
+				List<Long> ids = new ArrayList<>();
+				List<T> list = readRows(table, c, ids, generation);
+				for (int i = 0; i < list.size(); i++) {
+					rows.put(ids.get(i), list.get(i));
+				}
+			} finally {
+				c.close();
+			}
+		}
+		return rows;
+	}
+
+	/**
+	 * delete the relation data.
+	 *
+	 * @param clazz       parent table
+	 * @param selection   unique selection
+	 * @param table       can be null.
+	 * @param isWithLinks whether delete the children in the link tables, the link rows are deleted by the foreign
+	 *                    keys when the parents are deleted.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T extends Serializable> void deleteRelationTableData(Class<T> clazz, DBSelection<T> selection, Table<T> table, boolean isWithLinks) {
+		if (table == null) {
+			table = checkTable(clazz);
+		}
+		if (table.otherTypeField.isEmpty()) {
+			return;
+		}
+		String parentSelection = "SELECT " + PRIMARY_KEY_COLUMN + " FROM " + table.tableName + (TextUtils.isEmpty(selection.selection) ? "" : " WHERE "
+				+ selection.selection);
+		for (Column column : table.mapper.otherColumns) {
+			Class<T> clazz1 = (Class<T>) column.relationClass;
+			if (clazz1 == null) {
+				continue;
+			}
+			List<Long> rowIDs = new ArrayList<>();
+			Cursor c;
+			if (column.isLink) {
+				if (!isWithLinks) {
+					continue;
+				}
+				c = db.rawQuery("SELECT `" + LINK_CHILD_COLUMN + "` FROM `" + getLinkTableName(table.tableName, column) + "` WHERE `" + LINK_FIELD_COLUMN
+						+ "`=? AND `" + LINK_PARENT_COLUMN + "` IN (" + parentSelection + ")", concat(column.name, selection.selectionArgs));
+			} else {
+				c = db.query(table.tableName, new String[]{"`" + column.name + "`"}, selection.selection, selection.selectionArgs, null, null, null);
+			}
+			if (c == null) {
+				continue;
+			}
+			try {
+				while (c.moveToNext()) {
+					if (column.isLink) {
+						rowIDs.add(c.getLong(0));
+					} else {
+						for (long rowID : parseRowIDs(c.getString(0))) {
+							rowIDs.add(rowID);
+						}
+					}
+				}
+			} finally {
+				c.close();
+			}
+			deleteByRowIDs(clazz1, rowIDs);
+		}
+	}
+
+	/**
+	 * delete the rows by chunked ROWID IN (...), and their relation data.
+	 */
+	private <T extends Serializable> void deleteByRowIDs(Class<T> clazz, List<Long> rowIDs) {
+		for (int start = 0; start < rowIDs.size(); start += MAX_VARIABLE_NUMBER) {
+			List<Long> chunk = rowIDs.subList(start, Math.min(start + MAX_VARIABLE_NUMBER, rowIDs.size()));
+			DBSelection<T> sel = new DBSelection<>();
+			StringBuilder selection = new StringBuilder("ROWID IN (");
+			sel.selectionArgs = new String[chunk.size()];
+			for (int i = 0; i < sel.selectionArgs.length; i++) {
+				selection.append(i == 0 ? "?" : ",?");
+				sel.selectionArgs[i] = String.valueOf(chunk.get(i));
+			}
+			sel.selection = selection.append(")").toString();
+			int count = deleteBySelection(clazz, sel);
+			XLog.v(TAG, "operation : %s TABLE %s success. And the count = %s ", "DELETE", clazz.getSimpleName(), count);
 		}
 	}
 
+	private static String[] concat(String first, String[] args) {
+		String[] result = new String[args == null ? 1 : args.length + 1];
+		result[0] = first;
+		if (args != null) {
+			System.arraycopy(args, 0, result, 1, args.length);
+		}
+		return result;
+	}
+
 	/**
-	 * set relation table data to the ContentValues.
+	 * set relation table data to the ContentValues. The {@link Column#isLink} columns are saved by
+	 * {@link #saveLinks(Table, Serializable, long)} after the bean is saved.
 	 *
 	 * @param bean   from bean
 	 * @param table  can be null
@@ -482,37 +2186,171 @@ public class DBUtils {
 		if (table == null) {
 			table = (Table<T>) checkTable(bean.getClass());
 		}
-		for (int i = 0; i < table.otherTypeField.size(); i++) {
-			StringBuilder columnValues = new StringBuilder();
-			Field field = table.otherTypeField.get(i);
-			Class<T> clazz1 = ReflectUtils.getFieldClass(field);
-			if (ReflectUtils.isNormalGenericType(clazz1) || !ReflectUtils.hasParameterlessConstructor(clazz1)) {
-				continue;
-			}
-			if (clazz1 != null) {
-				if (field.getType() == List.class || field.getType() == ArrayList.class) {
-					List<T> l = (List<T>) field.get(bean);
-					if (l == null) {
-						continue;
-					}
-					for (T t : l) {
-						if (t == null) {
-							continue;
-						}
-						columnValues.append(ROW_ID_SPLIT);
-						columnValues.append(insert(t));
-					}
-					columnValues.delete(0, ROW_ID_SPLIT.length());
-				} else {
-					T obj = (T) field.get(bean);
-					if (obj == null) {
-						continue;
-					}
-					columnValues.append(insert(obj));
+		for (Column column : table.mapper.otherColumns) {
+			Field field = column.field;
+			Class<T> clazz1 = (Class<T>) column.relationClass;
+			if (column.isList || clazz1 == null || !EntityMapper.of(clazz1).hasConstructor()) {
+				continue;
+			}
+			T obj = (T) field.get(bean);
+			if (obj == null) {
+				continue;
+			}
+			values.put(column.name, String.valueOf(saveChild(obj)));
+		}
+	}
+
+	/**
+	 * save the list relations of the bean to the link tables. The children are saved (updated if they exist), and the
+	 * link rows are diffed with the existing ones: the removed children are deleted, the new ones are linked and the
+	 * others are only moved if their positions changed. A null list is ignored.
+	 *
+	 * @param table    parent table
+	 * @param bean     parent
+	 * @param parentID the primary key of the parent
+	 * @throws Exception
+	 */
+	@SuppressWarnings("unchecked")
+	private <T extends Serializable> void saveLinks(Table<T> table, T bean, long parentID) throws Exception {
+		for (Column column : table.mapper.otherColumns) {
+			Class<T> clazz1 = (Class<T>) column.relationClass;
+			if (!column.isLink || !EntityMapper.of(clazz1).hasConstructor()) {
+				continue;
+			}
+			List<T> l = (List<T>) column.field.get(bean);
+			if (l == null) {
+				continue;
+			}
+			String linkTableName = getLinkTableName(table.tableName, column);
+			String linkSelection = "`" + LINK_PARENT_COLUMN + "`=? AND `" + LINK_FIELD_COLUMN + "`=?";
+			List<Long> oldIDs = new ArrayList<>();
+			Cursor c = db.query(linkTableName, new String[]{LINK_CHILD_COLUMN}, linkSelection, new String[]{String.valueOf(parentID), column.name}, null,
+					null, LINK_POSITION_COLUMN);
+			if (c != null) {
+				try {
+					while (c.moveToNext()) {
+						oldIDs.add(c.getLong(0));
+					}
+				} finally {
+					c.close();
+				}
+			}
+			List<Long> newIDs = new ArrayList<>();
+			for (T t : l) {
+				long _id = t == null ? -1 : saveChild(t);
+				if (_id > 0 && !newIDs.contains(_id)) {
+					newIDs.add(_id);
+				}
+			}
+			List<Long> removedIDs = new ArrayList<>(oldIDs);
+			removedIDs.removeAll(newIDs);
+			deleteByRowIDs(clazz1, removedIDs);
+			oldIDs.removeAll(removedIDs);
+			for (int i = 0; i < newIDs.size(); i++) {
+				Long _id = newIDs.get(i);
+				if (i < oldIDs.size() && _id.equals(oldIDs.get(i))) {// not moved
+					continue;
+				}
+				ContentValues values = new ContentValues();
+				values.put(LINK_POSITION_COLUMN, i);
+				String[] args = new String[]{String.valueOf(parentID), column.name, String.valueOf(_id)};
+				if (!oldIDs.contains(_id) || db.update(linkTableName, values, linkSelection + " AND `" + LINK_CHILD_COLUMN + "`=?", args) == 0) {
+					values.put(LINK_PARENT_COLUMN, parentID);
+					values.put(LINK_FIELD_COLUMN, column.name);
+					values.put(LINK_CHILD_COLUMN, _id);
+					db.insert(linkTableName, null, values);
+				}
+			}
+			XLog.v(TAG, "operation : %s TABLE %s success. parent = %s, size = %s, removed = %s", "LINK", linkTableName, parentID, newIDs.size(),
+					removedIDs.size());
+		}
+	}
+
+	/**
+	 * insert the child, or update it if it exists.
+	 *
+	 * @return the primary key of the child, -1 if fail.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T extends Serializable> long saveChild(T child) {
+		Class<T> clazz = (Class<T>) child.getClass();
+		Table<T> table = checkTable(clazz);
+		long _id = getPrimaryKeyValue(clazz, table.uniqueSelection.fillIn(child));
+		if (_id > 0) {
+			update(child);
+			return _id;
+		}
+		return insert(child);
+	}
+
+	/**
+	 * @param tableName parent table name
+	 * @param column    the {@link Column#isLink} column
+	 * @return Parent_Child
+	 */
+	public static String getLinkTableName(String tableName, Column column) {
+		return tableName + "_" + column.relationClass.getSimpleName();
+	}
+
+	/**
+	 * create the link tables of the {@link Column#isLink} columns if they don't exist.
+	 *
+	 * @param table parent table
+	 */
+	private <T extends Serializable> void checkLinkTables(Table<T> table) {
+		for (Column column : table.mapper.otherColumns) {
+			if (!column.isLink) {
+				continue;
+			}
+			Table<?> childTable = checkTable(column.relationClass);
+			String linkTableName = getLinkTableName(table.tableName, column);
+			String sql = "CREATE TABLE IF NOT EXISTS `" + linkTableName + "`(`" + LINK_PARENT_COLUMN + "` INTEGER NOT NULL REFERENCES `" + table.tableName
+					+ "`(`" + PRIMARY_KEY_COLUMN + "`) ON DELETE CASCADE,`" + LINK_CHILD_COLUMN + "` INTEGER NOT NULL REFERENCES `" + childTable.tableName
+					+ "`(`" + PRIMARY_KEY_COLUMN + "`) ON DELETE CASCADE,`" + LINK_FIELD_COLUMN + "` TEXT NOT NULL,`" + LINK_POSITION_COLUMN + "` INTEGER)";
+			db.execSQL(sql);
+			db.execSQL(new TableIndex(linkTableName, new String[]{LINK_PARENT_COLUMN, LINK_FIELD_COLUMN}, false).getCreateSQL(linkTableName));
+			db.execSQL(new TableIndex(linkTableName, new String[]{LINK_CHILD_COLUMN}, false).getCreateSQL(linkTableName));
+		}
+	}
+
+	/**
+	 * move the rowIDs of the legacy list column (split by {@link #ROW_ID_SPLIT}) to the link table. The rowIDs whose
+	 * rows don't exist are dropped. It's called in the transaction which drops the column.
+	 *
+	 * @param tableName parent table name
+	 * @param column    the {@link Column#isLink} column
+	 */
+	private void migrateLinkColumn(String tableName, Column column) {
+		String linkTableName = getLinkTableName(tableName, column);
+		String childTableName = column.relationClass.getSimpleName();
+		// the parents whose links are saved to the link table already are skipped.
+		Cursor c = db.rawQuery("SELECT `" + PRIMARY_KEY_COLUMN + "`,`" + column.name + "` FROM `" + tableName + "` WHERE `" + column.name + "` != '' AND `"
+				+ PRIMARY_KEY_COLUMN + "` NOT IN (SELECT `" + LINK_PARENT_COLUMN + "` FROM `" + linkTableName + "` WHERE `" + LINK_FIELD_COLUMN + "` = ?)",
+				new String[]{column.name});
+		if (c == null) {
+			return;
+		}
+		SQLiteStatement insert = db.compileStatement("INSERT INTO `" + linkTableName + "`(`" + LINK_PARENT_COLUMN + "`,`" + LINK_CHILD_COLUMN + "`,`"
+				+ LINK_FIELD_COLUMN + "`,`" + LINK_POSITION_COLUMN + "`) SELECT ?,`" + PRIMARY_KEY_COLUMN + "`,?,? FROM `" + childTableName + "` WHERE `"
+				+ PRIMARY_KEY_COLUMN + "`=?");
+		int count = 0;
+		try {
+			while (c.moveToNext()) {
+				long[] rowIDs = parseRowIDs(c.getString(1));
+				for (int i = 0; i < rowIDs.length; i++) {
+					insert.bindLong(1, c.getLong(0));
+					insert.bindString(2, column.name);
+					insert.bindLong(3, i);
+					insert.bindLong(4, rowIDs[i]);
+					insert.executeInsert();
+					count++;
 				}
 			}
-			values.put(field.getName(), columnValues.toString());
+		} finally {
+			insert.close();
+			c.close();
 		}
+		XLog.v(TAG, "migrate %s.%s to %s, %d rowIDs", tableName, column.name, linkTableName, count);
 	}
 
 	/**
@@ -551,19 +2389,14 @@ public class DBUtils {
 	public <T extends Serializable> DBSelection<T> getUniqueSelection(Class<T> clazz) {
 		DBSelection<T> dbSelection = new DBSelection<>();
 		StringBuilder selection = new StringBuilder();
-		Field[] fields = clazz.getDeclaredFields();
 		List<Field> l = new ArrayList<>();
-		for (Field f : fields) {
-			f.setAccessible(true);
-			if (isNotExcept(f) && f.getAnnotation(Unique.class) != null) {
-				String name = f.getName();
-				selection.append("`");
-				selection.append(name);
-				selection.append("`");
-				selection.append("=?");
-				selection.append(" AND");
-				l.add(f);
-			}
+		for (Column column : EntityMapper.of(clazz).uniqueColumns) {
+			selection.append("`");
+			selection.append(column.name);
+			selection.append("`");
+			selection.append("=?");
+			selection.append(" AND");
+			l.add(column.field);
 		}
 		if (selection.length() > 4) {
 			selection.delete(selection.length() - 4, selection.length());
@@ -579,41 +2412,26 @@ public class DBUtils {
 	 * @param bean bean
 	 * @return DBSelection
 	 */
+	@SuppressWarnings("unchecked")
 	public <T extends Serializable> DBSelection<T> getSelection(T bean) {
 		DBSelection<T> dbSelection = new DBSelection<>();
 		StringBuilder selection = new StringBuilder();
-		StringBuilder orderBy = new StringBuilder();
-		List<Field> orderByList = new ArrayList<>();
 		List<String> values = new ArrayList<>();
-		Field[] fields = bean.getClass().getDeclaredFields();
-		boolean isSort = false;
-		for (Field f : fields) {
-			f.setAccessible(true);
-			if (isNotExcept(f)) {
-				Object value = null;
-				try {
-					value = f.get(bean);
-				} catch (Exception e) {
-					XLog.w(TAG, e);
-				}
-				String name = f.getName();
-				if (((value instanceof Number && ((Number) value).intValue() != 0) || value instanceof String || value instanceof Byte[])) {
-					selection.append("`");
-					selection.append(name);
-					selection.append("`");
-					selection.append("=?");
-					selection.append(" AND ");
-					values.add(String.valueOf(value));
-				} else if (value != null) {
-					//
-				}
-				OrderBy ob = f.getAnnotation(OrderBy.class);
-				if (ob != null) {
-					orderByList.add(f);
-					if (ob.orderPosition() != 0) {
-						isSort = true;
-					}
-				}
+		EntityMapper<T> mapper = EntityMapper.of((Class<T>) bean.getClass());
+		for (Column column : mapper.columns) {
+			Object value = null;
+			try {
+				value = column.get(bean);
+			} catch (Exception e) {
+				XLog.w(TAG, e);
+			}
+			if (((value instanceof Number && ((Number) value).intValue() != 0) || value instanceof String || value instanceof Byte[])) {
+				selection.append("`");
+				selection.append(column.name);
+				selection.append("`");
+				selection.append("=?");
+				selection.append(" AND ");
+				values.add(String.valueOf(value));
 			}
 		}
 		if (selection.length() > 4) {
@@ -621,41 +2439,12 @@ public class DBUtils {
 		}
 		String[] selectionArgs = new String[values.size()];
 		values.toArray(selectionArgs);
-		if (orderByList.size() > 0) {
-			Field[] fieldArray = new Field[orderByList.size()];
-			orderByList.toArray(fieldArray);
-			for (int i = 0; i < fieldArray.length - 1 && isSort; i++) { //
-				for (int j = 0; j < fieldArray.length - i - 1; j++) { //
-					int p1 = fieldArray[j].getAnnotation(OrderBy.class).orderPosition();
-					int p2 = fieldArray[j + 1].getAnnotation(OrderBy.class).orderPosition();
-					if (p1 > p2) {
-						Field temp = fieldArray[j];
-						fieldArray[j] = fieldArray[j + 1];
-						fieldArray[j + 1] = temp;
-					}
-				}
-			}
-			for (Field field : fieldArray) {
-				orderBy.append("`");
-				orderBy.append(field.getName());
-				orderBy.append("`");
-				orderBy.append(field.getAnnotation(OrderBy.class).value() == SortAs.ASC ? " ASC" : " DESC");
-				orderBy.append(",");
-			}
-		}
-		if (orderBy.length() > 1) {
-			orderBy.deleteCharAt(orderBy.length() - 1);
-		}
 		dbSelection.selection = selection.length() > 0 ? selection.toString() : null;
 		dbSelection.selectionArgs = selection.length() > 0 ? selectionArgs : null;
-		dbSelection.orderBy = orderBy.length() > 0 ? orderBy.toString() : null;
+		dbSelection.orderBy = mapper.orderBy;
 		return dbSelection;
 	}
 
-	private boolean isNotExcept(Field f) {
-		return !Modifier.isTransient(f.getModifiers()) && !Modifier.isStatic(f.getModifiers()) && f.getAnnotation(Expose.class) == null;
-	}
-
 	/**
 	 * ContentValues
 	 * 
@@ -663,49 +2452,12 @@ public class DBUtils {
 	 * @return ContentValues
 	 * @throws Exception
 	 */
+	@SuppressWarnings("unchecked")
 	public <T extends Serializable> ContentValues getContentValues(T bean) throws Exception {
 		ContentValues values = new ContentValues();
-		boolean hasUnique = false;
-		Field[] fields = bean.getClass().getDeclaredFields();
-		for (Field f : fields) {
-			f.setAccessible(true);
-			if (isNotExcept(f)) {
-				if (f.getAnnotation(Unique.class) != null) {
-					hasUnique = true;
-				}
-				Object value = null;
-				try {
-					value = f.get(bean);
-				} catch (Exception e) {
-					XLog.w(TAG, e);
-				}
-				String name = f.getName();
-				if (f.getAnnotation(Encrypt.class) != null && value != null && ReflectUtils.isNormalGenericType(value.getClass())) {
-					values.put(name, DESUtil.encrypt(value.toString(), name));
-				} else if (value instanceof Long) {
-					values.put(name, (Long) value);
-				} else if (value instanceof String) {
-					values.put(name, (String) value);
-				} else if (value instanceof Double) {
-					values.put(name, (Double) value);
-				} else if (value instanceof Integer) {
-					values.put(name, (Integer) value);
-				} else if (value instanceof Float) {
-					values.put(name, (Float) value);
-				} else if (value instanceof Short) {
-					values.put(name, (Short) value);
-				} else if (value instanceof Byte) {
-					values.put(name, (Byte) value);
-				} else if (value instanceof Boolean) {
-					values.put(name, (Boolean) value);
-				} else if (value instanceof byte[]) {
-					values.put(name, (byte[]) value);
-				} else {
-					//
-				}
-			}
-		}
-		if (!hasUnique) {
+		EntityMapper<T> mapper = EntityMapper.of((Class<T>) bean.getClass());
+		mapper.putValues(bean, values);
+		if (mapper.uniqueColumns.length == 0) {
 			values.put(PRIMARY_KEY_COLUMN, (String) null);
 		}
 		values.put(TIME_COLUMN, System.currentTimeMillis());
@@ -728,53 +2480,37 @@ public class DBUtils {
 	 * @param tableName tableName
 	 * @return SQL String
 	 */
-	@SuppressWarnings("unchecked")
 	public <T extends Serializable> String getCreateTableSQL(Class<T> clazz, String tableName) {
 		if (TextUtils.isEmpty(tableName)) {
 			tableName = clazz.getSimpleName();
 		}
 		StringBuilder sql = new StringBuilder();
 		sql.append("CREATE TABLE IF NOT EXISTS ").append(tableName).append("(");
-		Field[] fields = clazz.getDeclaredFields();
 		sql.append("`");
 		sql.append(PRIMARY_KEY_COLUMN);
 		sql.append("`");
 		sql.append(" INTEGER PRIMARY KEY AUTOINCREMENT ");
 		sql.append(",");
-		for (Field field : fields) {
-			field.setAccessible(true);
-			if (isNotExcept(field)) {
-				NotNull c = field.getAnnotation(NotNull.class);
-				Type type = field.getGenericType();
-				if (!ReflectUtils.isNormalGenericType(type)) {
-					sql.append("`");
-					sql.append(field.getName());
-					sql.append("`");
-					Class<T> clazz1 = null;
-					if ((field.getType() == List.class || field.getType() == ArrayList.class) && type instanceof ParameterizedType) {
-						clazz1 = (Class<T>) ((ParameterizedType) type).getActualTypeArguments()[0];
-					} else if (type instanceof Class) {
-						clazz1 = (Class<T>) type;
-					}
-					if (clazz1 != null && !ReflectUtils.isNormalGenericType(clazz1)) {
-						checkTable(clazz1);
-					}
-				} else {
-					sql.append("`");
-					sql.append(field.getName());
-					sql.append("`");
-				}
-				sql.append(" TEXT");
-				if (c != null) {
-					sql.append(" NOT NULL ");
-				}
-				sql.append(",");
+		for (Column column : EntityMapper.of(clazz).columns) {
+			if (column.relationClass != null) {
+				checkTable(column.relationClass);
 			}
+			if (column.isLink) {// in the link table.
+				continue;
+			}
+			sql.append("`");
+			sql.append(column.name);
+			sql.append("`");
+			sql.append(" ").append(column.affinity);
+			if (column.notNull) {
+				sql.append(" NOT NULL ");
+			}
+			sql.append(",");
 		}
 		sql.append("`");
 		sql.append(TIME_COLUMN);
 		sql.append("`");
-		sql.append(" TEXT");
+		sql.append(" INTEGER");
 		sql.append(");");
 		XLog.v(TAG, sql.toString());
 		return sql.toString();
@@ -788,43 +2524,10 @@ public class DBUtils {
 	 * @throws IllegalArgumentException
 	 * @throws IllegalAccessException
 	 */
+	@SuppressWarnings("unchecked")
 	public <T extends Serializable> void setObject(T bean, Cursor c) throws Exception {
-		Field[] fields = bean.getClass().getDeclaredFields();
-		for (Field f : fields) {
-			f.setAccessible(true);
-			String columnName = f.getName();
-			int columnIndex = c.getColumnIndex(columnName);
-			if (columnIndex == -1) {
-				continue;
-			}
-			if (ReflectUtils.isNormalGenericType(f.getGenericType())) {
-				String columnValue = c.getString(columnIndex);
-				Object v = null;
-				if (f.getAnnotation(Encrypt.class) != null) {
-					columnValue = DESUtil.decrypt(columnValue, columnName);
-				}
-				if (f.getGenericType() == Long.class || f.getGenericType() == long.class) {
-					v = Long.valueOf(columnValue);
-				} else if (f.getGenericType() == String.class) {
-					v = String.valueOf(columnValue);
-				} else if (f.getGenericType() == Double.class || f.getGenericType() == double.class) {
-					v = Double.valueOf(columnValue);
-				} else if (f.getGenericType() == Integer.class || f.getGenericType() == int.class) {
-					v = Integer.valueOf(columnValue);
-				} else if (f.getGenericType() == Float.class || f.getGenericType() == float.class) {
-					v = Float.valueOf(columnValue);
-				} else if (f.getGenericType() == Short.class || f.getGenericType() == short.class) {
-					v = Short.valueOf(columnValue);
-				} else if (f.getGenericType() == Boolean.class || f.getGenericType() == boolean.class) {
-					v = Boolean.valueOf(columnValue);
-				} else if (f.getGenericType() == Byte[].class || f.getGenericType() == byte[].class) {
-					v = c.getBlob(columnIndex);
-				}
-				f.set(bean, v);
-			} else {
-
-			}
-		}
+		EntityMapper<T> mapper = EntityMapper.of((Class<T>) bean.getClass());
+		mapper.fill(bean, c, mapper.getColumnIndexes(c));
 	}
 
 	/**
@@ -837,35 +2540,76 @@ public class DBUtils {
 	 * @return T
 	 */
 	public <T extends Serializable> T getObject(Class<T> clazz, Cursor c) throws Exception {
-		T t = clazz.newInstance();
-		setObject(t, c);
+		EntityMapper<T> mapper = EntityMapper.of(clazz);
+		T t = mapper.newInstance();
+		mapper.fill(t, c, mapper.getColumnIndexes(c));
 		return t;
 	}
 
 	/**
-	 * check table is exist.
+	 * check the table of the class and the tables of its relations. It's called before a transaction which may write
+	 * them, because a table isn't rebuilt in a transaction.
+	 *
+	 * @param clazz class
+	 * @return the table of the class.
+	 */
+	private <T extends Serializable> Table<T> checkTables(Class<T> clazz) {
+		return checkTables(clazz, new HashSet<Class<?>>());
+	}
+
+	private <T extends Serializable> Table<T> checkTables(Class<T> clazz, Set<Class<?>> checked) {
+		Table<T> table = checkTable(clazz);
+		checked.add(clazz);
+		for (Column column : table.mapper.otherColumns) {
+			if (column.relationClass != null && !checked.contains(column.relationClass)) {
+				checkTables(column.relationClass, checked);
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * check table is exist. The registered table is returned without locking, otherwise the table is created or
+	 * migrated once under the schema lock.
 	 * 
 	 * @param clazz class
 	 * @return the table instance.
 	 */
 	@SuppressWarnings("unchecked")
-	public synchronized <T extends Serializable> Table<T> checkTable(Class<T> clazz) {
+	public <T extends Serializable> Table<T> checkTable(Class<T> clazz) {
 		if (clazz == null) {
 			throw new IllegalArgumentException("XDBHelper when create or check table , the class can't be null.");
 		}
 		String tableName = clazz.getSimpleName();
 		String key = dbName + "_" + tableName;
+		Table<T> table = tableMap.get(key);
+		if (table != null && table.ready) {
+			return table;
+		}
+		synchronized (schemaLock) {
+			return registerTable(clazz, key);
+		}
+	}
+
+	/**
+	 * create or migrate the table, it's called with the schema lock. A table which is being registered by the current
+	 * thread, e.g. a relation table referring back to it, is returned before it's ready.
+	 *
+	 * @param clazz class
+	 * @param key   the key in {@link #tableMap}
+	 * @return the table instance.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T extends Serializable> Table<T> registerTable(Class<T> clazz, String key) {
 		Table<T> table = tableMap.get(key);
 		if (table == null) {
+			String tableName = clazz.getSimpleName();
 			table = new Table<>();
 			table.tableName = tableName;
 			table.tableClass = clazz;
-			Field[] fields = clazz.getDeclaredFields();
-			for (Field field : fields) {
-				field.setAccessible(true);
-				if (!ReflectUtils.isNormalGenericType(field.getGenericType()) && isNotExcept(field)) {
-					table.otherTypeField.add(field);
-				}
+			table.mapper = EntityMapper.of(clazz);
+			for (Column column : table.mapper.otherColumns) {
+				table.otherTypeField.add(column.field);
 			}
 			tableMap.put(key, table);
 		} else
@@ -882,139 +2626,544 @@ public class DBUtils {
 					table.isExist = true;
 				}
 			}
-			TableInfo info = new TableInfo();
-			info.tableClass = clazz.getName();
-			info.tableName = clazz.getSimpleName();
+			TableVersion tableVersion = clazz.getAnnotation(TableVersion.class);
+			int version = tableVersion == null ? 1 : tableVersion.value();
+			String fingerprint = getSchemaFingerprint(table, version);
+			TableInfo info = table.isExist ? getTableInfoMap(tableInfo).get(table.tableName) : null;
+			if (info != null && version <= info.tableVersion && fingerprint.equals(info.schemaHash)) {
+				// nothing is changed since the last check, the indexes were created by it.
+				table.hasUniqueIndex = table.mapper.uniqueIndex != null && !getFallbackIndexes(info).contains(table.mapper.uniqueIndex.name);
+				return table;
+			}
+			checkLinkTables(table);
 			if (!table.isExist) {
 				createTable(clazz);
-				db.insert(tableInfo.tableName, null, getContentValues(info));
 				table.isExist = true;
 			} else {
-				TableVersion tableVersion = clazz.getAnnotation(TableVersion.class);
-				int version = tableVersion == null ? 1 : tableVersion.value();
-				int dbVersion = 1;
-				TableInfo result = helper.findByBean(info);
-				if (result != null) {
-					dbVersion = result.tableVersion;
-				}
-				if (version > dbVersion) {
-					XLog.start(TAG, "MODIFY TABLE" + info.tableName);
-					db.beginTransaction();
+				int dbVersion = info == null ? 1 : info.tableVersion;
+				if (version > dbVersion || isColumnTypeChanged(table)) {
+					// a failed migration skips saving the table info, so it's retried when the database is opened next time.
+					XLog.start(TAG, "MODIFY TABLE" + table.tableName);
 					try {
 						checkFieldInTable(clazz);
-						db.execSQL("UPDATE " + tableInfo.tableName + " SET tableVersion = " + version + " WHERE tableName = '"
-								+ table.tableName + "'");
-						db.setTransactionSuccessful();
-					} catch (Exception e) {
-						XLog.w(TAG, e);
+					} finally {
+						XLog.end(TAG, "MODIFY TABLE" + table.tableName);
 					}
-					db.endTransaction();
-					XLog.end(TAG, "MODIFY TABLE" + info.tableName);
 				}
 			}
+			// the unique indexes which fell back aren't built again until the version is increased.
+			Set<String> fallbackIndexes = info == null || version > info.tableVersion ? new HashSet<String>() : getFallbackIndexes(info);
+			checkIndexes(table, fallbackIndexes);
+			checkFullText(table);
+			saveTableInfo(tableInfo, table, info, version, fingerprint, fallbackIndexes);
 		} catch (Exception e) {
 			e.printStackTrace();
 		} finally {
 			if (cursor != null) cursor.close();
+			table.ready = true;
 		}
 		return table;
 	}
 
-	public <T extends Serializable> void checkFieldInTable(Class<T> clazz) {
-		String tableName = clazz.getSimpleName();
-		String sql = "SELECT * FROM " + tableName + " WHERE 1 != 1";
-		Cursor c = db.rawQuery(sql, null);
-		if (c == null) {
+	/**
+	 * @param tableInfo the table of {@link TableInfo}
+	 * @return the rows of {@link TableInfo} by the table names, which are loaded once. It's called with the schema
+	 * lock, and the columns missing in the older versions of {@link TableInfo} are left default.
+	 */
+	private Map<String, TableInfo> getTableInfoMap(Table<TableInfo> tableInfo) {
+		if (tableInfoMap != null) {
+			return tableInfoMap;
+		}
+		Map<String, TableInfo> map = new HashMap<>();
+		Cursor c = null;
+		try {
+			c = db.rawQuery("SELECT * FROM " + tableInfo.tableName, null);
+			if (c != null) {
+				int[] indexes = tableInfo.mapper.getColumnIndexes(c);
+				while (c.moveToNext()) {
+					TableInfo info = tableInfo.mapper.newInstance();
+					tableInfo.mapper.fill(info, c, indexes);
+					map.put(info.tableName, info);
+				}
+			}
+		} catch (Exception e) {
+			XLog.w(TAG, e);
+		} finally {
+			if (c != null) c.close();
+		}
+		return tableInfoMap = map;
+	}
+
+	/**
+	 * save the version and the schema fingerprint of the checked table.
+	 *
+	 * @param tableInfo   the table of {@link TableInfo}
+	 * @param table       the checked table
+	 * @param info        the saved row, null if it doesn't exist
+	 * @param version     the version of the class
+	 * @param fingerprint the fingerprint
+	 * @param fallbacks   the names of the unique indexes which fell back
+	 */
+	private <T extends Serializable> void saveTableInfo(Table<TableInfo> tableInfo, Table<T> table, TableInfo info, int version,
+			String fingerprint, Set<String> fallbacks) throws Exception {
+		String fallbackIndexes = fallbacks.isEmpty() ? null : TextUtils.join(",", fallbacks);
+		if (info == null) {
+			info = new TableInfo();
+			info.tableName = table.tableName;
+			info.tableClass = table.tableClass.getName();
+			info.tableVersion = version;
+			info.schemaHash = fingerprint;
+			info.fallbackIndexes = fallbackIndexes;
+			db.insert(tableInfo.tableName, null, getContentValues(info));
+		} else {
+			info.tableClass = table.tableClass.getName();
+			info.tableVersion = Math.max(version, info.tableVersion);
+			info.schemaHash = fingerprint;
+			info.fallbackIndexes = fallbackIndexes;
+			db.update(tableInfo.tableName, getContentValues(info), "tableName = ?", new String[]{table.tableName});
+		}
+		if (tableInfoMap != null) {
+			tableInfoMap.put(table.tableName, info);
+		}
+	}
+
+	/**
+	 * @return the names of {@link TableInfo#fallbackIndexes}, it's modifiable.
+	 */
+	private static Set<String> getFallbackIndexes(TableInfo info) {
+		Set<String> names = new HashSet<>();
+		if (!TextUtils.isEmpty(info.fallbackIndexes)) {
+			names.addAll(Arrays.asList(info.fallbackIndexes.split(",")));
+		}
+		return names;
+	}
+
+	/**
+	 * @return the digest of the class name, the version, the columns and the indexes of the table, a changed class
+	 * changes it.
+	 */
+	private static <T extends Serializable> String getSchemaFingerprint(Table<T> table, int version) {
+		StringBuilder sb = new StringBuilder(table.tableClass.getName()).append(';').append(version);
+		for (Column column : table.mapper.columns) {
+			sb.append(';').append(column.name).append(':').append(column.affinity).append(':').append(column.isList).append(':')
+					.append(column.isLink).append(':').append(column.fullText);
+		}
+		for (TableIndex index : table.mapper.indexes) {
+			sb.append(';').append(index.getCreateSQL(table.tableName));
+		}
+		return MD5.md5s(sb.toString());
+	}
+
+	/**
+	 * create the indexes of {@link EntityMapper#indexes} which don't exist, and drop the xparser indexes which are
+	 * removed from the class. A unique index falls back to a normal index if the existing rows aren't unique.
+	 *
+	 * @param table     table
+	 * @param fallbacks the names of the unique indexes which fell back, they're created as the normal indexes. The new
+	 *                  fallbacks are added to it.
+	 */
+	private <T extends Serializable> void checkIndexes(Table<T> table, Set<String> fallbacks) {
+		Set<String> existIndexes = new HashSet<>();
+		Cursor c = db.rawQuery("SELECT name FROM sqlite_master WHERE type = 'index' AND tbl_name = ?", new String[]{table.tableName});
+		if (c != null) {
+			try {
+				while (c.moveToNext()) {
+					String name = c.getString(0);
+					if (name != null && (name.startsWith(EntityMapper.INDEX_PREFIX) || name.startsWith(EntityMapper.UNIQUE_INDEX_PREFIX))) {
+						existIndexes.add(name);
+					}
+				}
+			} finally {
+				c.close();
+			}
+		}
+		Set<String> uniqueIndexes = new HashSet<>();
+		for (TableIndex index : table.mapper.indexes) {
+			if (index.unique) {
+				uniqueIndexes.add(index.name);
+			}
+		}
+		fallbacks.retainAll(uniqueIndexes);// the indexes removed from the class.
+		Set<String> indexes = new HashSet<>();
+		for (TableIndex index : table.mapper.indexes) {
+			if (index.unique && fallbacks.contains(index.name)) {
+				index = new TableIndex(table.tableName, index.columns, false);
+			}
+			if (existIndexes.contains(index.name)) {
+				indexes.add(index.name);
+				continue;
+			}
+			String sql = index.getCreateSQL(table.tableName);
+			try {
+				db.execSQL(sql);
+				indexes.add(index.name);
+				XLog.v(TAG, sql);
+			} catch (SQLException e) {
+				XLog.w(TAG, "create index %s fail : %s", index.name, e.toString());
+				if (index.unique) {// the rows aren't unique, use a normal index instead.
+					TableIndex normal = new TableIndex(table.tableName, index.columns, false);
+					db.execSQL(normal.getCreateSQL(table.tableName));
+					indexes.add(normal.name);
+					fallbacks.add(index.name);
+				}
+			}
+		}
+		table.hasUniqueIndex = table.mapper.uniqueIndex != null && indexes.contains(table.mapper.uniqueIndex.name);
+		for (String name : existIndexes) {
+			if (!indexes.contains(name)) {
+				db.execSQL("DROP INDEX IF EXISTS `" + name + "`");
+				XLog.v(TAG, "drop index " + name);
+			}
+		}
+	}
+
+	/**
+	 * create the shadow full-text table of the {@link com.lokiy.x.db.annotation.FullText} columns and the triggers
+	 * which keep it in sync, the docid is the ROWID of the table. It's rebuilt from the table if its definition is
+	 * changed, and dropped if there isn't any full-text column.
+	 *
+	 * @param table table
+	 */
+	private <T extends Serializable> void checkFullText(Table<T> table) {
+		String ftsTable = FULL_TEXT_TABLE_PREFIX + table.tableName;
+		Column[] columns = table.mapper.fullTextColumns;
+		String existSQL = DatabaseUtils.stringForQuery(db, "SELECT (SELECT sql FROM sqlite_master WHERE type = 'table' AND name = ?)",
+				new String[]{ftsTable});
+		if (columns.length == 0) {
+			if (existSQL != null) {
+				dropFullTextTriggers(ftsTable);
+				db.execSQL("DROP TABLE IF EXISTS `" + ftsTable + "`");
+				XLog.v(TAG, "drop full-text table " + ftsTable);
+			}
 			return;
 		}
-		Field[] fields = clazz.getDeclaredFields();
-		List<String> addColumns = new ArrayList<>();
-		Map<String, List<String>> renameColumns = new HashMap<>();
+		StringBuilder names = new StringBuilder();
+		StringBuilder newNames = new StringBuilder();
+		for (Column column : columns) {
+			names.append(names.length() == 0 ? "`" : ",`").append(column.name).append("`");
+			newNames.append(newNames.length() == 0 ? "new.`" : ",new.`").append(column.name).append("`");
+		}
+		String module = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB ? "fts4" : "fts3";
+		String tokenizer = Build.VERSION.SDK_INT >= UNICODE61_SDK_INT ? ",tokenize=unicode61" : "";
+		// the prefix indexes answer the short prefixes of typeahead without scanning the terms.
+		String prefix = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN ? ",prefix=\"" + MIN_PREFIX_LENGTH + "," + (MIN_PREFIX_LENGTH + 1)
+				+ "\"" : "";
+		String sql = "CREATE VIRTUAL TABLE `" + ftsTable + "` USING " + module + "(" + names + tokenizer + prefix + ")";
+		if (!sql.equals(existSQL)) {
+			XLog.start(TAG, "CREATE FULL-TEXT TABLE " + ftsTable);
+			db.beginTransaction();
+			try {
+				dropFullTextTriggers(ftsTable);
+				db.execSQL("DROP TABLE IF EXISTS `" + ftsTable + "`");
+				db.execSQL(sql);
+				XLog.v(TAG, sql);
+				db.execSQL("INSERT INTO `" + ftsTable + "`(docid," + names + ") SELECT ROWID," + names + " FROM " + table.tableName);
+				db.setTransactionSuccessful();
+			} finally {
+				endTransaction();
+			}
+			XLog.end(TAG, "CREATE FULL-TEXT TABLE " + ftsTable);
+		}
+		// the triggers are dropped with the table when it's rebuilt, so they are always checked.
+		db.execSQL("CREATE TRIGGER IF NOT EXISTS `" + ftsTable + "_ai` AFTER INSERT ON " + table.tableName + " BEGIN INSERT INTO `"
+				+ ftsTable + "`(docid," + names + ") VALUES (new.ROWID," + newNames + "); END");
+		db.execSQL("CREATE TRIGGER IF NOT EXISTS `" + ftsTable + "_au` AFTER UPDATE ON " + table.tableName + " BEGIN DELETE FROM `"
+				+ ftsTable + "` WHERE docid = old.ROWID; INSERT INTO `" + ftsTable + "`(docid," + names + ") VALUES (new.ROWID," + newNames
+				+ "); END");
+		db.execSQL("CREATE TRIGGER IF NOT EXISTS `" + ftsTable + "_ad` AFTER DELETE ON " + table.tableName + " BEGIN DELETE FROM `"
+				+ ftsTable + "` WHERE docid = old.ROWID; END");
+	}
+
+	private void dropFullTextTriggers(String ftsTable) {
+		for (String suffix : new String[]{"_ai", "_au", "_ad"}) {
+			db.execSQL("DROP TRIGGER IF EXISTS `" + ftsTable + suffix + "`");
+		}
+	}
+
+	/**
+	 * migrate the table to match the class.
+	 *
+	 * @param clazz class
+	 */
+	public <T extends Serializable> void checkFieldInTable(Class<T> clazz) {
+		migrate(clazz, getMigrationPlan(clazz));
+	}
+
+	/**
+	 * plan the changes of the table to match the class without changing the table.
+	 *
+	 * @param clazz class
+	 * @return the plan, which is empty if the table doesn't exist or matches the class.
+	 */
+	public <T extends Serializable> MigrationPlan getMigrationPlan(Class<T> clazz) {
+		MigrationPlan plan = new MigrationPlan();
+		String tableName = plan.tableName = clazz.getSimpleName();
+		Map<String, String> tableColumns = getTableColumns(tableName);
+		if (tableColumns.isEmpty()) {
+			return plan;
+		}
+		boolean isRenameSupported = Build.VERSION.SDK_INT >= RENAME_COLUMN_SDK_INT;
+		plan.isRebuild = !EntityMapper.AFFINITY_INTEGER.equalsIgnoreCase(tableColumns.get(TIME_COLUMN));
 		StringBuilder newColumns = new StringBuilder(PRIMARY_KEY_COLUMN + "," + TIME_COLUMN);
 		StringBuilder originalColumns = new StringBuilder(PRIMARY_KEY_COLUMN + "," + TIME_COLUMN);
-		for (Field f : fields) {
-			f.setAccessible(true);
-			if (!isNotExcept(f)) {
+		for (Column column : EntityMapper.of(clazz).columns) {
+			String columnName = column.name;
+			if (column.isLink) {// the rowIDs are moved to the link table, and the column is dropped.
+				if (tableColumns.containsKey(columnName)) {
+					plan.linkColumns.add(columnName);
+					plan.isRebuild = true;
+				}
 				continue;
 			}
-			String columnName = f.getName();
-			Rename r = f.getAnnotation(Rename.class);
-			String[] names = r == null ? new String[] {} : dealEmptyValue(r.value());
-			if (names.length > 0) {
-				renameColumns.put(columnName, Arrays.asList(names));
-			}
-			boolean isExist = c.getColumnIndex(columnName) > 0;
-			if (isExist) {// exist column. no change
-				addColumn(newColumns, originalColumns, columnName, columnName);
-			} else { // not exist. delete or rename or add
-				if (r != null && names.length > 0) { // rename.
-					for (String originalColumn : names) {
-						isExist = c.getColumnIndex(originalColumn) > 0;
-						if (isExist) {
-							addColumn(newColumns, originalColumns, columnName, originalColumn);
-							break;
-						}
-					}
-				} else {// add
-					addColumns.add(columnName);
-					XLog.v(TAG, "add " + columnName);
+			String originalColumn = tableColumns.containsKey(columnName) ? columnName : null;
+			for (int i = 0; originalColumn == null && i < column.renames.length; i++) { // rename.
+				if (tableColumns.containsKey(column.renames[i])) {
+					originalColumn = column.renames[i];
+				}
+			}
+			if (originalColumn == null) { // add
+				plan.addColumns.add(columnName);
+				continue;
+			}
+			if (!originalColumn.equals(columnName)) {
+				plan.renameColumns.put(originalColumn, columnName);
+				if (!isRenameSupported) {
+					plan.isRebuild = true;
 				}
 			}
+			if (!column.affinity.equalsIgnoreCase(tableColumns.get(originalColumn))) {
+				plan.isRebuild = true;
+			}
+			addColumn(newColumns, originalColumns, columnName, originalColumn, column.affinity);
 		}
+		if (plan.isRebuild) {// the new columns are created with the new table.
+			plan.newColumns = newColumns.toString();
+			plan.originalColumns = originalColumns.toString();
+			plan.rowCount = DatabaseUtils.queryNumEntries(db, tableName, null, null);
+		}
+		return plan;
+	}
 
-		if (!newColumns.toString().equals(originalColumns.toString()) || !renameColumns.isEmpty()) {// rename delete column
-			String tempTableName = "temp_" + tableName;
-			db.execSQL(getCreateTableSQL(clazz, tempTableName));
+	/**
+	 * migrate the table by the plan. The columns are added or renamed by ALTER TABLE if the table needn't be rebuilt.
+	 * Otherwise the rows are copied into {@link #REBUILD_TABLE_PREFIX}table in chunks, each in its own transaction,
+	 * and the new table replaces the original one at last. The copying is resumed from the copied rows if it's
+	 * interrupted. The table can't be rebuilt in a transaction, in which the foreign keys can't be turned off.
+	 *
+	 * @param clazz class
+	 * @param plan  the plan of {@link #getMigrationPlan(Class)}
+	 */
+	private <T extends Serializable> void migrate(Class<T> clazz, MigrationPlan plan) {
+		if (plan.isEmpty()) {
+			return;
+		}
+		XLog.v(TAG, plan.toString());
+		String tableName = plan.tableName;
+		String sql;
+		if (!plan.isRebuild) {
+			db.beginTransaction();
+			try {
+				for (Map.Entry<String, String> entry : plan.renameColumns.entrySet()) {
+					sql = "ALTER TABLE " + tableName + " RENAME COLUMN `" + entry.getKey() + "` TO `" + entry.getValue() + "`";
+					db.execSQL(sql);
+					XLog.v(TAG, sql);
+				}
+				for (String columnName : plan.addColumns) {
+					String affinity = EntityMapper.of(clazz).getColumn(columnName).affinity;
+					sql = "ALTER TABLE " + tableName + " ADD COLUMN `" + columnName + "` " + affinity;
+					if (EntityMapper.AFFINITY_TEXT.equals(affinity)) {
+						sql += " DEFAULT ''";
+					}
+					db.execSQL(sql);
+					XLog.v(TAG, sql);
+				}
+				db.setTransactionSuccessful();
+			} finally {
+				endTransaction();
+			}
+			return;
+		}
+		if (db.inTransaction()) {
+			// dropping the original table deletes the link rows by the foreign keys, and the pragma is a no-op in a
+			// transaction.
+			throw new IllegalStateException("can't rebuild " + tableName + " in a transaction");
+		}
+		db.execSQL("PRAGMA foreign_keys=OFF;");
+		try {
+			rebuild(clazz, plan);
+		} finally {
+			db.execSQL("PRAGMA foreign_keys=ON;");
+		}
+	}
 
-			sql = "INSERT INTO " + tempTableName + "(" + newColumns.toString() + ") SELECT " + originalColumns.toString() + " FROM "
-					+ tableName;
-			XLog.v(TAG, sql);
-			db.execSQL(sql);
-			sql = "DROP TABLE " + tableName;
-			XLog.v(TAG, sql);
-			db.execSQL(sql);
-			createTable(clazz);
-			sql = "INSERT INTO " + tableName + "(" + newColumns.toString() + ") SELECT " + newColumns.toString() + " FROM " + tempTableName;
-			XLog.v(TAG, sql);
-			db.execSQL(sql);
-			sql = "DROP TABLE " + tempTableName;
+	/**
+	 * copy the rows into the new table in chunks, and replace the original table with it. The legacy list columns
+	 * are moved to the link tables in the same transaction as the replacing, so they are moved once even if the
+	 * copying is resumed.<BR>
+	 * The copying is resumed only after the process died, when the original table hasn't been written since. If it
+	 * fails in the process, the new table is dropped, because the original table is used for the rest of the
+	 * session and the copied rows would be out of date.
+	 *
+	 * @param clazz class
+	 * @param plan  the plan of {@link #getMigrationPlan(Class)}
+	 */
+	private <T extends Serializable> void rebuild(Class<T> clazz, MigrationPlan plan) {
+		String tableName = plan.tableName;
+		String sql;
+		String newTableName = REBUILD_TABLE_PREFIX + tableName;
+		Map<String, String> newTableColumns = getTableColumns(newTableName);
+		if (!newTableColumns.isEmpty() && !newTableColumns.keySet().equals(getCreatedColumns(clazz))) {
+			// it's left by the rebuilding of an older class.
+			db.execSQL("DROP TABLE IF EXISTS " + newTableName);
+			newTableColumns.clear();
+		}
+		if (newTableColumns.isEmpty()) {
+			db.execSQL(getCreateTableSQL(clazz, newTableName));
+		}
+		try {
+			String idSQL = "SELECT IFNULL(MAX(" + PRIMARY_KEY_COLUMN + "), 0) FROM " + newTableName;
+			long copied = DatabaseUtils.queryNumEntries(db, newTableName, null, null);
+			long lastID = DatabaseUtils.longForQuery(db, idSQL, null);
+			sql = "INSERT INTO " + newTableName + "(" + plan.newColumns + ") SELECT " + plan.originalColumns + " FROM " + tableName + " WHERE "
+					+ PRIMARY_KEY_COLUMN + " > ? ORDER BY " + PRIMARY_KEY_COLUMN + " LIMIT " + migrationChunkSize;
 			XLog.v(TAG, sql);
-			db.execSQL(sql);
+			while (true) {
+				long id;
+				db.beginTransaction();
+				try {
+					db.execSQL(sql, new Object[]{lastID});
+					id = DatabaseUtils.longForQuery(db, idSQL, null);
+					db.setTransactionSuccessful();
+				} finally {
+					endTransaction();
+				}
+				if (id == lastID) {
+					break;
+				}
+				copied += DatabaseUtils.queryNumEntries(db, newTableName, PRIMARY_KEY_COLUMN + " > ?", new String[]{String.valueOf(lastID)});
+				lastID = id;
+				MigrationListener listener = migrationListener;
+				if (listener != null) {
+					listener.onProgress(tableName, copied, plan.rowCount);
+				}
+			}
+			EntityMapper<T> mapper = EntityMapper.of(clazz);
+			db.beginTransaction();
+			try {
+				for (String columnName : plan.linkColumns) {
+					migrateLinkColumn(tableName, mapper.getColumn(columnName));
+				}
+				db.execSQL("DROP TABLE " + tableName);
+				db.execSQL("ALTER TABLE " + newTableName + " RENAME TO " + tableName);
+				db.setTransactionSuccessful();
+			} finally {
+				endTransaction();
+			}
+			XLog.v(TAG, "rebuild %s, %d rows", tableName, copied);
+		} catch (RuntimeException e) {
+			try {
+				db.execSQL("DROP TABLE IF EXISTS " + newTableName);
+			} catch (RuntimeException e1) {
+				XLog.w(TAG, "drop %s fail : %s", newTableName, e1.toString());
+			}
+			throw e;
 		}
-		if (!addColumns.isEmpty()) {// add column
-			for (String column : addColumns) {
-				sql = "ALTER TABLE " + tableName + " ADD COLUMN " + column + " TEXT DEFAULT '';";
-				db.execSQL(sql);
-				XLog.v(TAG, sql);
+	}
+
+	/**
+	 * @return the column names of the table created by {@link #getCreateTableSQL(Class, String)}.
+	 */
+	private <T extends Serializable> Set<String> getCreatedColumns(Class<T> clazz) {
+		Set<String> columns = new HashSet<>();
+		columns.add(PRIMARY_KEY_COLUMN);
+		columns.add(TIME_COLUMN);
+		for (Column column : EntityMapper.of(clazz).columns) {
+			if (!column.isLink) {
+				columns.add(column.name);
 			}
 		}
+		return columns;
+	}
 
-		c.close();
+	/**
+	 * set the chunk size and the listener of the rebuilding of the tables.
+	 *
+	 * @param chunkSize the rows copied in each transaction
+	 * @param listener  listener, null means none.
+	 */
+	public void setMigration(int chunkSize, MigrationListener listener) {
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("XDBHelper migration chunk size must be positive");
+		}
+		this.migrationChunkSize = chunkSize;
+		this.migrationListener = listener;
 	}
 
+	/**
+	 * Whether the declared type of any column is different from the field type, e.g. the tables created as all TEXT
+	 * columns, or there is the list relation column which is replaced by the link table.
+	 *
+	 * @param table table
+	 * @return true if the table should be migrated.
+	 */
+	private <T extends Serializable> boolean isColumnTypeChanged(Table<T> table) {
+		Map<String, String> tableColumns = getTableColumns(table.tableName);
+		if (tableColumns.isEmpty()) {
+			return false;
+		}
+		if (!EntityMapper.AFFINITY_INTEGER.equalsIgnoreCase(tableColumns.get(TIME_COLUMN))) {
+			return true;
+		}
+		for (Column column : table.mapper.columns) {
+			String type = tableColumns.get(column.name);
+			if (type != null && (column.isLink || !column.affinity.equalsIgnoreCase(type))) {// the legacy list column.
+				return true;
+			}
+		}
+		return false;
+	}
 
+	/**
+	 * @param tableName table name
+	 * @return column name => declared type, empty if the table doesn't exist.
+	 */
+	private Map<String, String> getTableColumns(String tableName) {
+		Map<String, String> columns = new LinkedHashMap<>();
+		Cursor c = db.rawQuery("PRAGMA table_info(`" + tableName + "`)", null);
+		if (c == null) {
+			return columns;
+		}
+		try {
+			int nameIndex = c.getColumnIndex("name");
+			int typeIndex = c.getColumnIndex("type");
+			while (c.moveToNext()) {
+				columns.put(c.getString(nameIndex), c.getString(typeIndex));
+			}
+		} finally {
+			c.close();
+		}
+		return columns;
+	}
 
-	private void addColumn(StringBuilder newColumns, StringBuilder originalColumns, String columnName, String originalColumn) {
+	/**
+	 * @param affinity the declared type of the new column. The empty TEXT values can't be converted to the other
+	 *                 types, so they are copied as NULL.
+	 */
+	private void addColumn(StringBuilder newColumns, StringBuilder originalColumns, String columnName, String originalColumn, String affinity) {
 		newColumns.append(",");
 		newColumns.append("`");
 		newColumns.append(columnName);
 		newColumns.append("`");
 		originalColumns.append(",");
-		originalColumns.append("`");
-		originalColumns.append(originalColumn);
-		originalColumns.append("`");
-	}
-
-	private String[] dealEmptyValue(String[] args) {
-		List<String> list = new ArrayList<>();
-		for (String string : args) {
-			if (!TextUtils.isEmpty(string)) {
-				list.add(string);
-			}
+		if (EntityMapper.AFFINITY_TEXT.equals(affinity)) {
+			originalColumns.append("`");
+			originalColumns.append(originalColumn);
+			originalColumns.append("`");
+		} else {
+			originalColumns.append("NULLIF(`");
+			originalColumns.append(originalColumn);
+			originalColumns.append("`,'')");
 		}
-		String[] array = new String[list.size()];
-		list.toArray(array);
-		return array;
 	}
 
 }
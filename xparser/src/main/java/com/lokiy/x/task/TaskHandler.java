@@ -214,7 +214,7 @@ public class TaskHandler<T extends Serializable> extends XTask<T> {
 		TaskResult bean = new TaskResult();
 		bean.setKey(key);
 		bean.setValue(result.toString());
-		create.save(bean);
+		create.saveLater(bean);
 	}
 
 	/**